@@ -28,14 +28,20 @@ import com.google.android.material.textfield.TextInputEditText;
 import com.example.app.adapters.BookmarkAdapter;
 import com.example.app.database.DatabaseHelper;
 import com.example.app.models.Bookmark;
+import com.example.app.utils.BookmarkIndex;
+import com.example.app.utils.PagedLoader;
 
-import java.util.List;
+import java.util.ArrayList;
 
 public class BookmarksActivity extends AppCompatActivity implements BookmarkAdapter.OnBookmarkClickListener {
+    private static final int PAGE_SIZE = 50;
+
     private RecyclerView recyclerView;
     private LinearLayout emptyState;
     private BookmarkAdapter adapter;
     private DatabaseHelper databaseHelper;
+    private BookmarkIndex bookmarkIndex;
+    private PagedLoader<Bookmark> bookmarkLoader;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -76,21 +82,38 @@ public class BookmarksActivity extends AppCompatActivity implements BookmarkAdap
         recyclerView.setDrawingCacheEnabled(true);
         recyclerView.setDrawingCacheQuality(View.DRAWING_CACHE_QUALITY_HIGH);
         
-        databaseHelper = new DatabaseHelper(this);
+        databaseHelper = DatabaseHelper.getInstance(this);
+        bookmarkIndex = BookmarkIndex.getInstance(this);
+        bookmarkLoader = new PagedLoader<>(PAGE_SIZE,
+                (last, limit) -> last == null
+                        ? databaseHelper.getBookmarksPage(Long.MAX_VALUE, Long.MAX_VALUE, limit)
+                        : databaseHelper.getBookmarksPage(last.getTimestamp(), last.getId(), limit),
+                (items, first) -> {
+                    if (first) {
+                        adapter = new BookmarkAdapter(new ArrayList<>(items), this);
+                        recyclerView.setAdapter(adapter);
+                        updateEmptyState();
+                    } else if (adapter != null) {
+                        adapter.addBookmarks(items);
+                    }
+                });
+        bookmarkLoader.attach(recyclerView);
     }
 
     private void loadBookmarks() {
-        List<Bookmark> bookmarks = databaseHelper.getAllBookmarks();
-        
-        if (bookmarks.isEmpty()) {
-            recyclerView.setVisibility(View.GONE);
-            emptyState.setVisibility(View.VISIBLE);
-        } else {
-            recyclerView.setVisibility(View.VISIBLE);
-            emptyState.setVisibility(View.GONE);
-            adapter = new BookmarkAdapter(bookmarks, this);
-            recyclerView.setAdapter(adapter);
-        }
+        bookmarkLoader.reload();
+    }
+
+    private void updateEmptyState() {
+        boolean isEmpty = adapter == null || adapter.getItemCount() == 0;
+        recyclerView.setVisibility(isEmpty ? View.GONE : View.VISIBLE);
+        emptyState.setVisibility(isEmpty ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        bookmarkLoader.shutdown();
     }
 
     @Override
@@ -105,8 +128,11 @@ public class BookmarksActivity extends AppCompatActivity implements BookmarkAdap
 
     @Override
     public void onBookmarkDelete(Bookmark bookmark) {
-        databaseHelper.deleteBookmark(bookmark.getId());
-        loadBookmarks(); // Refresh the list
+        if (adapter != null) {
+            adapter.removeBookmark(bookmark);
+        }
+        updateEmptyState();
+        bookmarkIndex.removeBookmark(bookmark);
     }
 
     @Override
@@ -206,12 +232,15 @@ public class BookmarksActivity extends AppCompatActivity implements BookmarkAdap
             }
             
             // Update bookmark
+            String oldUrl = bookmark.getUrl();
             bookmark.setTitle(newTitle);
             bookmark.setUrl(newUrl);
-            databaseHelper.updateBookmark(bookmark);
+            bookmarkIndex.updateBookmark(bookmark, oldUrl);
             
-            // Refresh the list
-            loadBookmarks();
+            // Refresh the row; the bookmark keeps its place in the list
+            if (adapter != null) {
+                adapter.updateBookmark(bookmark);
+            }
             dialog.dismiss();
             Toast.makeText(this, "Bookmark updated", Toast.LENGTH_SHORT).show();
         });
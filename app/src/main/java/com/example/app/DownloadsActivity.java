@@ -19,17 +19,24 @@ import android.widget.Toast;
 import com.example.app.adapters.DownloadAdapter;
 import com.example.app.database.DatabaseHelper;
 import com.example.app.models.DownloadItem;
+import com.example.app.utils.PagedLoader;
 
 import java.io.File;
-import java.util.List;
+import java.util.ArrayList;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class DownloadsActivity extends AppCompatActivity implements DownloadAdapter.OnDownloadItemClickListener {
+    private static final int PAGE_SIZE = 50;
     
     private RecyclerView downloadsRecyclerView;
     private DownloadAdapter downloadAdapter;
     private DatabaseHelper databaseHelper;
     private View emptyView;
+    private PagedLoader<DownloadItem> downloadLoader;
+    // Deletes, in order
+    private final ExecutorService databaseExecutor = Executors.newSingleThreadExecutor();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -39,7 +46,7 @@ public class DownloadsActivity extends AppCompatActivity implements DownloadAdap
         setupToolbar();
         initializeViews();
         setupRecyclerView();
-        loadDownloads();
+        // onResume loads the list
     }
 
     private void setupToolbar() {
@@ -56,7 +63,7 @@ public class DownloadsActivity extends AppCompatActivity implements DownloadAdap
     private void initializeViews() {
         downloadsRecyclerView = findViewById(R.id.downloadsRecyclerView);
         emptyView = findViewById(R.id.emptyView);
-        databaseHelper = new DatabaseHelper(this);
+        databaseHelper = DatabaseHelper.getInstance(this);
         
         if (downloadsRecyclerView == null) {
             throw new RuntimeException("downloadsRecyclerView not found in layout");
@@ -79,22 +86,43 @@ public class DownloadsActivity extends AppCompatActivity implements DownloadAdap
             
             downloadAdapter = new DownloadAdapter(this, this);
             downloadsRecyclerView.setAdapter(downloadAdapter);
+
+            downloadLoader = new PagedLoader<>(PAGE_SIZE,
+                    (last, limit) -> last == null
+                            ? databaseHelper.getDownloadsPage(Long.MAX_VALUE, Long.MAX_VALUE, limit)
+                            : databaseHelper.getDownloadsPage(last.getTimestamp(), last.getId(), limit),
+                    (items, first) -> {
+                        if (first) {
+                            downloadAdapter.setDownloads(new ArrayList<>(items));
+                            updateEmptyState();
+                        } else {
+                            downloadAdapter.addDownloads(items);
+                        }
+                    });
+            downloadLoader.attach(downloadsRecyclerView);
         }
     }
 
     private void loadDownloads() {
-        if (databaseHelper == null || downloadAdapter == null || emptyView == null || downloadsRecyclerView == null) {
+        if (databaseHelper == null || downloadLoader == null || emptyView == null || downloadsRecyclerView == null) {
             return;
         }
-        
-        List<DownloadItem> downloads = databaseHelper.getAllDownloads();
-        downloadAdapter.setDownloads(downloads);
-        
-        boolean isEmpty = downloads.isEmpty();
+        downloadLoader.reload();
+    }
+
+    private void updateEmptyState() {
+        boolean isEmpty = downloadAdapter.getItemCount() == 0;
         emptyView.setVisibility(isEmpty ? View.VISIBLE : View.GONE);
         downloadsRecyclerView.setVisibility(isEmpty ? View.GONE : View.VISIBLE);
     }
 
+    // Remove a download from the list now and from the database in the background
+    private void removeDownload(DownloadItem downloadItem) {
+        downloadAdapter.removeDownload(downloadItem);
+        updateEmptyState();
+        databaseExecutor.execute(() -> databaseHelper.deleteDownloadItem(downloadItem.getId()));
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.downloads_menu, menu);
@@ -117,8 +145,10 @@ public class DownloadsActivity extends AppCompatActivity implements DownloadAdap
     }
 
     private void clearAllDownloads() {
-        databaseHelper.clearDownloads();
-        loadDownloads();
+        downloadLoader.cancel();
+        downloadAdapter.setDownloads(new ArrayList<>());
+        updateEmptyState();
+        databaseExecutor.execute(() -> databaseHelper.clearDownloads());
         Toast.makeText(this, "All downloads cleared", Toast.LENGTH_SHORT).show();
     }
 
@@ -142,8 +172,7 @@ public class DownloadsActivity extends AppCompatActivity implements DownloadAdap
         if (!file.exists()) {
             Toast.makeText(this, "File not found", Toast.LENGTH_SHORT).show();
             // Remove from database if file doesn't exist
-            databaseHelper.deleteDownloadItem(downloadItem.getId());
-            loadDownloads();
+            removeDownload(downloadItem);
             return;
         }
 
@@ -302,13 +331,14 @@ public class DownloadsActivity extends AppCompatActivity implements DownloadAdap
     private void deleteDownloadAndFile(DownloadItem downloadItem, boolean deleteFile) {
         if (deleteFile) {
             File file = new File(downloadItem.getFilePath());
-            if (file.exists()) {
-                file.delete();
-            }
+            databaseExecutor.execute(() -> {
+                if (file.exists()) {
+                    file.delete();
+                }
+            });
         }
         
-        databaseHelper.deleteDownloadItem(downloadItem.getId());
-        loadDownloads();
+        removeDownload(downloadItem);
         
         String message = deleteFile ? "Download and file deleted" : "Download removed from list";
         Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
@@ -319,4 +349,13 @@ public class DownloadsActivity extends AppCompatActivity implements DownloadAdap
         super.onResume();
         loadDownloads(); // Refresh downloads when returning to activity
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (downloadLoader != null) {
+            downloadLoader.shutdown();
+        }
+        databaseExecutor.shutdown();
+    }
 }
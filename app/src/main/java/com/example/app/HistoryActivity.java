@@ -12,6 +12,8 @@ import android.content.ClipboardManager;
 import android.content.Context;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -19,20 +21,39 @@ import android.widget.LinearLayout;
 import android.widget.Toast;
 
 import androidx.appcompat.widget.PopupMenu;
+import androidx.appcompat.widget.SearchView;
 import androidx.appcompat.view.ContextThemeWrapper;
 
 import com.example.app.adapters.HistoryAdapter;
 import com.example.app.database.DatabaseHelper;
 import com.example.app.models.HistoryItem;
 import com.example.app.models.Bookmark;
+import com.example.app.utils.BookmarkIndex;
+import com.example.app.utils.PagedLoader;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class HistoryActivity extends AppCompatActivity implements HistoryAdapter.OnHistoryClickListener {
+    private static final int PAGE_SIZE = 50;
+    private static final int SEARCH_RESULTS = 50;
+    private static final long SEARCH_DELAY_MS = 250;
+
     private RecyclerView recyclerView;
     private LinearLayout emptyState;
     private HistoryAdapter adapter;
     private DatabaseHelper databaseHelper;
+    private PagedLoader<HistoryItem> historyLoader;
+    // Searches and deletes, in order
+    private final ExecutorService databaseExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Runnable pendingSearch;
+    // Incremented per search so that late results of an older query are dropped
+    private int searchGeneration;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -73,29 +94,111 @@ public class HistoryActivity extends AppCompatActivity implements HistoryAdapter
         recyclerView.setDrawingCacheEnabled(true);
         recyclerView.setDrawingCacheQuality(View.DRAWING_CACHE_QUALITY_HIGH);
         
-        databaseHelper = new DatabaseHelper(this);
+        databaseHelper = DatabaseHelper.getInstance(this);
+        historyLoader = new PagedLoader<>(PAGE_SIZE,
+                (last, limit) -> last == null
+                        ? databaseHelper.getHistoryPage(Long.MAX_VALUE, Long.MAX_VALUE, limit)
+                        : databaseHelper.getHistoryPage(last.getTimestamp(), last.getId(), limit),
+                (items, first) -> {
+                    if (first) {
+                        showHistory(items);
+                    } else if (adapter != null) {
+                        adapter.addItems(items);
+                    }
+                });
+        historyLoader.attach(recyclerView);
     }
 
     private void loadHistory() {
-        List<HistoryItem> historyItems = databaseHelper.getAllHistory();
-        
-        if (historyItems.isEmpty()) {
-            recyclerView.setVisibility(View.GONE);
-            emptyState.setVisibility(View.VISIBLE);
-        } else {
-            recyclerView.setVisibility(View.VISIBLE);
-            emptyState.setVisibility(View.GONE);
-            adapter = new HistoryAdapter(historyItems, this);
-            recyclerView.setAdapter(adapter);
-        }
+        historyLoader.reload();
+    }
+
+    private void showHistory(List<HistoryItem> historyItems) {
+        adapter = new HistoryAdapter(new ArrayList<>(historyItems), this);
+        recyclerView.setAdapter(adapter);
+        updateEmptyState();
+    }
+
+    private void updateEmptyState() {
+        boolean isEmpty = adapter == null || adapter.getItemCount() == 0;
+        recyclerView.setVisibility(isEmpty ? View.GONE : View.VISIBLE);
+        emptyState.setVisibility(isEmpty ? View.VISIBLE : View.GONE);
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.history_menu, menu);
+        MenuItem searchItem = menu.findItem(R.id.action_search_history);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        if (searchView != null) {
+            searchView.setQueryHint("Search titles and page text");
+            searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+                @Override
+                public boolean onQueryTextSubmit(String query) {
+                    scheduleSearch(query, 0);
+                    return true;
+                }
+
+                @Override
+                public boolean onQueryTextChange(String newText) {
+                    scheduleSearch(newText, SEARCH_DELAY_MS);
+                    return true;
+                }
+            });
+        }
         return true;
     }
 
+    private void scheduleSearch(String query, long delay) {
+        if (pendingSearch != null) {
+            mainHandler.removeCallbacks(pendingSearch);
+        }
+        int generation = ++searchGeneration;
+        if (query == null || query.trim().isEmpty()) {
+            loadHistory();
+            return;
+        }
+        // Results replace the paged list until the query is cleared
+        historyLoader.cancel();
+        pendingSearch = () -> databaseExecutor.execute(() -> {
+            List<HistoryItem> results = searchHistory(query);
+            runOnUiThread(() -> {
+                if (generation == searchGeneration && !isFinishing()) {
+                    showHistory(results);
+                }
+            });
+        });
+        mainHandler.postDelayed(pendingSearch, delay);
+    }
+
+    /**
+     * Pages whose text matches, with snippets, then pages whose title or
+     * URL matches.
+     */
+    private List<HistoryItem> searchHistory(String query) {
+        List<HistoryItem> results = new ArrayList<>(databaseHelper.searchPageContent(query, SEARCH_RESULTS));
+        Set<String> urls = new HashSet<>();
+        for (HistoryItem item : results) {
+            urls.add(item.getUrl());
+        }
+        for (HistoryItem item : databaseHelper.searchHistory(query, SEARCH_RESULTS)) {
+            if (urls.add(item.getUrl())) {
+                results.add(item);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (pendingSearch != null) {
+            mainHandler.removeCallbacks(pendingSearch);
+        }
+        historyLoader.shutdown();
+        databaseExecutor.shutdown();
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         int itemId = item.getItemId();
@@ -104,8 +207,9 @@ public class HistoryActivity extends AppCompatActivity implements HistoryAdapter
             finish();
             return true;
         } else if (itemId == R.id.action_clear_history) {
-            databaseHelper.clearHistory();
-            loadHistory();
+            historyLoader.cancel();
+            showHistory(new ArrayList<>());
+            databaseExecutor.execute(() -> databaseHelper.clearHistory());
             return true;
         }
         
@@ -124,8 +228,18 @@ public class HistoryActivity extends AppCompatActivity implements HistoryAdapter
 
     @Override
     public void onHistoryDelete(HistoryItem historyItem) {
-        databaseHelper.deleteHistoryItem(historyItem.getId());
-        loadHistory();
+        if (adapter != null) {
+            adapter.removeItem(historyItem);
+        }
+        updateEmptyState();
+        databaseExecutor.execute(() -> {
+            if (historyItem.getId() > 0) {
+                databaseHelper.deleteHistoryItem(historyItem.getId());
+            } else {
+                // Search results stand for every visit to their URL
+                databaseHelper.deleteHistoryUrl(historyItem.getUrl());
+            }
+        });
     }
 
     @Override
@@ -190,14 +304,15 @@ public class HistoryActivity extends AppCompatActivity implements HistoryAdapter
 
     private void addToBookmarks(HistoryItem historyItem) {
         // Check if already bookmarked
-        if (databaseHelper.isBookmarked(historyItem.getUrl())) {
+        BookmarkIndex bookmarkIndex = BookmarkIndex.getInstance(this);
+        if (bookmarkIndex.isBookmarked(historyItem.getUrl())) {
             Toast.makeText(this, "Already bookmarked", Toast.LENGTH_SHORT).show();
             return;
         }
         
         // Add to bookmarks
         Bookmark bookmark = new Bookmark(historyItem.getTitle(), historyItem.getUrl());
-        databaseHelper.addBookmark(bookmark);
+        bookmarkIndex.addBookmark(bookmark);
         Toast.makeText(this, "Added to bookmarks", Toast.LENGTH_SHORT).show();
     }
 }
@@ -56,18 +56,21 @@ import com.example.app.adapters.SearchSuggestionAdapter;
 import com.example.app.database.DatabaseHelper;
 import com.example.app.models.BrowserTab;
 import com.example.app.models.DownloadItem;
-import com.example.app.models.HistoryItem;
 import com.example.app.models.SearchEngine;
 import com.example.app.models.SearchSuggestion;
 import com.example.app.utils.SearchEnginePreferences;
 import com.example.app.utils.AdBlocker;
+import com.example.app.utils.BookmarkIndex;
+import com.example.app.utils.HistoryPruneWorker;
 import com.example.app.utils.SearchSuggestionProvider;
 import com.example.app.utils.WebDownloader;
 import com.example.app.utils.DownloadNotificationManager;
+import com.example.app.utils.PageContentIndexer;
 import com.example.app.utils.PerformanceOptimizer;
 import com.example.app.utils.PrivateBrowsingManager;
 
 import com.example.app.utils.UserAgentManager;
+import com.example.app.utils.VisitRecorder;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -104,6 +107,9 @@ public class MainActivity extends AppCompatActivity {
     private DatabaseHelper databaseHelper;
     private SearchEnginePreferences searchEnginePrefs;
     private AdBlocker adBlocker;
+    private VisitRecorder visitRecorder;
+    private BookmarkIndex bookmarkIndex;
+    private PageContentIndexer pageContentIndexer;
     private WebDownloader webDownloader;
     private DownloadNotificationManager downloadNotificationManager;
     
@@ -281,8 +287,14 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void initializeDatabase() {
-        databaseHelper = new DatabaseHelper(this);
-        webDownloader = new WebDownloader(this, databaseHelper);
+        databaseHelper = DatabaseHelper.getInstance(this);
+        visitRecorder = VisitRecorder.getInstance(this);
+        // Starts loading the bookmarked URLs in the background
+        bookmarkIndex = BookmarkIndex.getInstance(this);
+        // Keep history within the retention setting
+        HistoryPruneWorker.schedule(this);
+        pageContentIndexer = PageContentIndexer.getInstance(this);
+        webDownloader = new WebDownloader(this);
         downloadNotificationManager = new DownloadNotificationManager(this);
         
         // Set up download progress listener
@@ -336,7 +348,8 @@ public class MainActivity extends AppCompatActivity {
 
     private void initializeSearchEngine() {
         searchEnginePrefs = new SearchEnginePreferences(this);
-        adBlocker = new AdBlocker(this);
+        adBlocker = AdBlocker.getInstance(this);
+        adBlocker.registerServiceWorkerClient();
         updateUrlBarHint();
     }
 
@@ -574,6 +587,9 @@ public class MainActivity extends AppCompatActivity {
             if (webView == null) return; // Safety check
             
             tab.setWebView(webView);
+            if (isPrivate && adBlocker != null) {
+                adBlocker.setPrivateTab(webView);
+            }
             
             // Configure WebView for private mode if needed
             if (privateBrowsingManager != null) {
@@ -670,6 +686,19 @@ public class MainActivity extends AppCompatActivity {
             // Note: setPluginState has been deprecated as plugins are no longer supported
 
         webView.setWebViewClient(new WebViewClient() {
+            // The page this WebView is being sent to by a redirect: a server
+            // redirect, or a navigation the user did not start
+            private String redirectUrl;
+
+            @Override
+            public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+                if (request.isForMainFrame()) {
+                    redirectUrl = request.isRedirect() || !request.hasGesture()
+                            ? request.getUrl().toString() : null;
+                }
+                return shouldOverrideUrlLoading(view, request.getUrl().toString());
+            }
+
             @Override
             public boolean shouldOverrideUrlLoading(WebView view, String url) {
                 // Handle intent:// URLs
@@ -725,10 +754,11 @@ public class MainActivity extends AppCompatActivity {
                 // Check if the request should be blocked by ad blocker
                 try {
                     if (adBlocker != null && adBlocker.isInitialized()) {
-                        WebResourceResponse blockedResponse = adBlocker.shouldBlockRequest(request);
-                        if (blockedResponse != null) {
-                            // The ad blocker already incremented the blocked count
-                            return blockedResponse;
+                        // An empty response for a blocked request (already counted), or
+                        // a filtered page when page script filtering is on
+                        WebResourceResponse adBlockResponse = adBlocker.shouldBlockRequest(view, request);
+                        if (adBlockResponse != null) {
+                            return adBlockResponse;
                         }
                     }
                 } catch (Exception e) {
@@ -741,6 +771,10 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onPageStarted(WebView view, String url, android.graphics.Bitmap favicon) {
                 super.onPageStarted(view, url, favicon);
+                if (adBlocker != null) {
+                    adBlocker.onPageStarted(view, url);
+                }
+                updateBlockedBadge(view);
                 if (progressBar != null) {
                     progressBar.setVisibility(View.VISIBLE);
                 }
@@ -750,12 +784,26 @@ public class MainActivity extends AppCompatActivity {
                 updateNavigationButtons();
             }
 
+            @Override
+            public void onPageCommitVisible(WebView view, String url) {
+                super.onPageCommitVisible(view, url);
+                if (adBlocker != null) {
+                    adBlocker.onPageCommitVisible(view, url);
+                }
+            }
+
             @Override
             public void onPageFinished(WebView view, String url) {
                 super.onPageFinished(view, url);
+                // Loads the app starts itself never pass through shouldOverrideUrlLoading
+                boolean redirect = url != null && url.equals(redirectUrl);
+                if (redirect) {
+                    redirectUrl = null;
+                }
                 if (progressBar != null) {
                     progressBar.setVisibility(View.GONE);
                 }
+                updateBlockedBadge(view);
                 updateNavigationButtons();
                 
                 // Update tab title
@@ -767,12 +815,15 @@ public class MainActivity extends AppCompatActivity {
                         updateTabTitle(currentTabIndex);
                     }
                     
-                    // Add to history (only if not in private mode)
-                    if (databaseHelper != null && url != null && 
+                    // Add to history (only if the tab that loaded the page is not private)
+                    if (visitRecorder != null && url != null && 
                         privateBrowsingManager != null) {
-                        if (currentTab != null && privateBrowsingManager.shouldSaveHistory(currentTab.isPrivate())) {
-                            HistoryItem historyItem = new HistoryItem(title, url);
-                            databaseHelper.addHistoryItem(historyItem);
+                        BrowserTab tab = getTab(view);
+                        if (tab != null && privateBrowsingManager.shouldSaveHistory(tab.isPrivate())) {
+                            visitRecorder.recordVisit(view, url, title, redirect);
+                            if (pageContentIndexer != null) {
+                                pageContentIndexer.indexPage(view, url, title);
+                            }
                         }
                     }
                 }
@@ -789,6 +840,7 @@ public class MainActivity extends AppCompatActivity {
                 if (progressBar != null) {
                     progressBar.setProgress(newProgress);
                 }
+                updateBlockedBadge(view);
             }
 
             @Override
@@ -996,6 +1048,12 @@ public class MainActivity extends AppCompatActivity {
         }
         
         // Destroy WebView
+        if (adBlocker != null) {
+            adBlocker.onWebViewDestroyed(webViewToClose);
+        }
+        if (visitRecorder != null) {
+            visitRecorder.removeTab(webViewToClose);
+        }
         webViewToClose.destroy();
         
         // Remove tab from list and UI
@@ -1017,6 +1075,28 @@ public class MainActivity extends AppCompatActivity {
         updateTabSelection();
     }
 
+    /**
+     * Show how many requests were blocked on the page of the tab holding view
+     */
+    private void updateBlockedBadge(WebView view) {
+        if (adBlocker == null || tabContainer == null) return;
+        for (int i = 0; i < tabs.size() && i < tabContainer.getChildCount(); i++) {
+            if (tabs.get(i).getWebView() != view) continue;
+            View tabView = tabContainer.getChildAt(i);
+            TextView badge = tabView != null ? tabView.findViewById(R.id.tabBlockedBadge) : null;
+            if (badge != null) {
+                long blocked = adBlocker.getPageBlockedCount(view);
+                if (blocked > 0) {
+                    badge.setText(blocked > 99 ? "99+" : String.valueOf(blocked));
+                    badge.setVisibility(View.VISIBLE);
+                } else {
+                    badge.setVisibility(View.GONE);
+                }
+            }
+            return;
+        }
+    }
+
     private void updateTabTitle(int index) {
         if (index >= 0 && index < tabs.size() && index < tabContainer.getChildCount()) {
             BrowserTab tab = tabs.get(index);
@@ -1132,7 +1212,7 @@ public class MainActivity extends AppCompatActivity {
         // Update bookmark icon
         WebView currentWebView = getCurrentWebView();
         String currentUrl = currentWebView != null ? currentWebView.getUrl() : "";
-        boolean isBookmarked = databaseHelper.isBookmarked(currentUrl);
+        boolean isBookmarked = bookmarkIndex.isBookmarked(currentUrl);
         MenuItem bookmarkItem = popup.getMenu().findItem(R.id.action_bookmark);
         bookmarkItem.setTitle(isBookmarked ? "Remove Bookmark" : "Add Bookmark");
 
@@ -1188,13 +1268,13 @@ public class MainActivity extends AppCompatActivity {
         
         if (url == null) return;
 
-        if (databaseHelper.isBookmarked(url)) {
+        if (bookmarkIndex.isBookmarked(url)) {
             // Remove bookmark
-            // Note: This is simplified - in a real app you'd need to get the bookmark ID
+            bookmarkIndex.removeBookmark(url);
             Toast.makeText(this, "Bookmark removed", Toast.LENGTH_SHORT).show();
         } else {
             // Add bookmark
-            databaseHelper.addBookmark(new com.example.app.models.Bookmark(title, url));
+            bookmarkIndex.addBookmark(new com.example.app.models.Bookmark(title, url));
             Toast.makeText(this, "Bookmark added", Toast.LENGTH_SHORT).show();
         }
     }
@@ -1269,6 +1349,8 @@ public class MainActivity extends AppCompatActivity {
                     performanceOptimizer.clearWebViewCache();
                     Toast.makeText(this, "Cache cleared", Toast.LENGTH_SHORT).show();
                 })
+                .setNeutralButton("Details", (dialog, which) ->
+                    startActivity(new Intent(this, PerformanceActivity.class)))
                 .setNegativeButton("Close", null)
                 .show();
         }
@@ -1282,6 +1364,18 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * The tab holding view, which need not be the one in front
+     */
+    private BrowserTab getTab(WebView view) {
+        for (BrowserTab tab : tabs) {
+            if (tab.getWebView() == view) {
+                return tab;
+            }
+        }
+        return null;
+    }
+
     private BrowserTab getCurrentTab() {
         if (currentTabIndex >= 0 && currentTabIndex < tabs.size()) {
             return tabs.get(currentTabIndex);
@@ -1297,6 +1391,12 @@ public class MainActivity extends AppCompatActivity {
         if (tabs != null) {
             for (BrowserTab tab : tabs) {
                 if (tab.getWebView() != null) {
+                    if (adBlocker != null) {
+                        adBlocker.onWebViewDestroyed(tab.getWebView());
+                    }
+                    if (visitRecorder != null) {
+                        visitRecorder.removeTab(tab.getWebView());
+                    }
                     tab.getWebView().destroy();
                 }
             }
@@ -1314,11 +1414,8 @@ public class MainActivity extends AppCompatActivity {
             searchHandler.removeCallbacksAndMessages(null);
         }
         
-        // Cleanup database
-        if (databaseHelper != null) {
-            databaseHelper.close();
-            databaseHelper = null;
-        }
+        // The database connection is shared by the process and stays open
+        databaseHelper = null;
         
         // Cleanup downloaders
         if (webDownloader != null) {
@@ -1331,8 +1428,9 @@ public class MainActivity extends AppCompatActivity {
             downloadNotificationManager = null;
         }
         
-        // Cleanup ad blocker
+        // Cleanup ad blocker (shared instance, just persist its statistics)
         if (adBlocker != null) {
+            adBlocker.flushStatistics();
             adBlocker = null;
         }
         
@@ -1520,6 +1618,21 @@ public class MainActivity extends AppCompatActivity {
         hideSuggestionsAndKeyboard();
         // Cancel any pending network requests to prevent memory leaks
         cancelPendingSearchRequests();
+        // Persist ad blocker statistics counted in memory
+        if (adBlocker != null) {
+            adBlocker.flushStatistics();
+        }
+        // Write visits still held back for redirect coalescing
+        if (visitRecorder != null) {
+            visitRecorder.flush();
+        }
+    }
+    
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Persist in-memory counters before the process may be killed
+        AdBlocker.flushPendingStatistics();
     }
     
     private void initializeUtilityManagers() {
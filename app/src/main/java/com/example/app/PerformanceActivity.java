@@ -1,6 +1,8 @@
 package com.example.app;
 
 import android.app.Activity;
+import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -8,11 +10,19 @@ import android.widget.TextView;
 import android.widget.Button;
 import android.widget.ProgressBar;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SwitchCompat;
+import androidx.core.content.FileProvider;
 
+import com.example.app.utils.AdBlocker;
 import com.example.app.utils.PerformanceOptimizer;
 import com.example.app.utils.DatabaseOptimizer;
 import com.example.app.database.DatabaseHelper;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * Performance monitoring and optimization activity
  */
@@ -25,15 +35,22 @@ public class PerformanceActivity extends AppCompatActivity {
     private Button clearCacheButton;
     private Button optimizeButton;
     private Button forceGcButton;
+    private TextView adBlockProfileText;
+    private SwitchCompat profilerSwitch;
+    private Button exportProfileButton;
+    private Button resetProfileButton;
     
     private PerformanceOptimizer performanceOptimizer;
     private DatabaseOptimizer databaseOptimizer;
     private DatabaseHelper databaseHelper;
+    private AdBlocker adBlocker;
     
     private Handler updateHandler;
     private Runnable updateRunnable;
     
     private static final int UPDATE_INTERVAL = 2000; // 2 seconds
+    private static final int PROFILE_TOP_RULES = 10;
+    private static final String PROFILE_EXPORT_FILE = "adblock_profile.csv";
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -57,12 +74,17 @@ public class PerformanceActivity extends AppCompatActivity {
         clearCacheButton = findViewById(R.id.clearCacheButton);
         optimizeButton = findViewById(R.id.optimizeButton);
         forceGcButton = findViewById(R.id.forceGcButton);
+        adBlockProfileText = findViewById(R.id.adBlockProfileText);
+        profilerSwitch = findViewById(R.id.profilerSwitch);
+        exportProfileButton = findViewById(R.id.exportProfileButton);
+        resetProfileButton = findViewById(R.id.resetProfileButton);
     }
     
     private void initializeOptimizers() {
         performanceOptimizer = PerformanceOptimizer.getInstance(this);
         databaseOptimizer = DatabaseOptimizer.getInstance(this);
-        databaseHelper = new DatabaseHelper(this);
+        databaseHelper = DatabaseHelper.getInstance(this);
+        adBlocker = AdBlocker.getInstance(this);
     }
     
     private void setupUpdateHandler() {
@@ -93,6 +115,48 @@ public class PerformanceActivity extends AppCompatActivity {
             performanceOptimizer.forceGarbageCollection();
             showToast("Garbage collection triggered");
         });
+        
+        profilerSwitch.setChecked(adBlocker.isProfilerEnabled());
+        profilerSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            adBlocker.setProfilerEnabled(isChecked);
+            updatePerformanceStats();
+        });
+        
+        exportProfileButton.setOnClickListener(v -> exportProfile());
+        
+        resetProfileButton.setOnClickListener(v -> {
+            adBlocker.getProfiler().reset();
+            updatePerformanceStats();
+            showToast("Profile reset");
+        });
+    }
+    
+    /**
+     * Write the per-rule profile to a CSV file off the main thread and offer
+     * to share it.
+     */
+    private void exportProfile() {
+        File file = new File(getCacheDir(), PROFILE_EXPORT_FILE);
+        new Thread(() -> {
+            try (Writer writer = new FileWriter(file)) {
+                adBlocker.getProfiler().writeCsv(writer);
+            } catch (IOException e) {
+                runOnUiThread(() -> showToast("Export failed"));
+                return;
+            }
+            runOnUiThread(() -> {
+                if (isFinishing()) {
+                    return;
+                }
+                Uri uri = FileProvider.getUriForFile(this,
+                    getApplicationContext().getPackageName() + ".fileprovider", file);
+                Intent shareIntent = new Intent(Intent.ACTION_SEND);
+                shareIntent.setType("text/csv");
+                shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
+                shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                startActivity(Intent.createChooser(shareIntent, "Export ad blocker profile"));
+            });
+        }, "ProfileExport").start();
     }
     
     private void startPerformanceMonitoring() {
@@ -126,6 +190,9 @@ public class PerformanceActivity extends AppCompatActivity {
             calculateCacheHitRate()
         ));
         
+        adBlockProfileText.setText(adBlocker.getProfiler()
+            .getSummary(adBlocker.getVerdictCache(), PROFILE_TOP_RULES));
+        
         // Update database stats
         databaseOptimizer.getDatabaseStats(databaseHelper.getReadableDatabase(), 
             new DatabaseOptimizer.DatabaseStatsCallback() {
@@ -139,9 +206,8 @@ public class PerformanceActivity extends AppCompatActivity {
     }
     
     private double calculateCacheHitRate() {
-        // Simple cache hit rate calculation
-        // In a real implementation, you'd track cache hits and misses
-        return 85.0 + Math.random() * 10.0; // Simulated 85-95% hit rate
+        // Hit rate of the ad blocker's verdict cache
+        return adBlocker.getVerdictCache().getHitRate() * 100;
     }
     
     private void showToast(String message) {
@@ -154,8 +220,5 @@ public class PerformanceActivity extends AppCompatActivity {
         if (updateHandler != null) {
             updateHandler.removeCallbacks(updateRunnable);
         }
-        if (databaseHelper != null) {
-            databaseHelper.close();
-        }
     }
 }
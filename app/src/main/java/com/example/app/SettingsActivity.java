@@ -8,21 +8,33 @@ import androidx.core.content.ContextCompat;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.text.format.Formatter;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.app.database.DatabaseHelper;
+import com.example.app.models.HistoryRetention;
 import com.example.app.models.SearchEngine;
 import com.example.app.utils.SearchEnginePreferences;
 import com.example.app.utils.AdBlocker;
+import com.example.app.utils.BlockingStats;
+import com.example.app.utils.BookmarkIndex;
+import com.example.app.utils.HistoryPruneWorker;
+import com.example.app.utils.HistoryRetentionPreferences;
+
+import java.util.List;
+import java.util.Locale;
 
 public class SettingsActivity extends AppCompatActivity {
-    private SwitchCompat javascriptSwitch, adBlockerSwitch, stealthModeSwitch;
-    private Button clearCacheButton, clearDataButton;
-    private TextView searchEngineText, adBlockerStatusText;
+    private SwitchCompat javascriptSwitch, adBlockerSwitch, stealthModeSwitch, hostsListSwitch,
+            htmlFilteringSwitch;
+    private Button clearCacheButton, clearDataButton, blockingStatsButton;
+    private TextView searchEngineText, historyRetentionText, adBlockerStatusText;
     private SearchEnginePreferences searchEnginePrefs;
+    private HistoryRetentionPreferences historyRetentionPrefs;
     private AdBlocker adBlocker;
 
     @Override
@@ -31,7 +43,8 @@ public class SettingsActivity extends AppCompatActivity {
         setContentView(R.layout.activity_settings);
 
         searchEnginePrefs = new SearchEnginePreferences(this);
-        adBlocker = new AdBlocker(this);
+        historyRetentionPrefs = new HistoryRetentionPreferences(this);
+        adBlocker = AdBlocker.getInstance(this);
         setupSystemBars();
         setupToolbar();
         initializeViews();
@@ -58,16 +71,22 @@ public class SettingsActivity extends AppCompatActivity {
         javascriptSwitch = findViewById(R.id.javascriptSwitch);
         adBlockerSwitch = findViewById(R.id.adBlockerSwitch);
         stealthModeSwitch = findViewById(R.id.stealthModeSwitch);
+        hostsListSwitch = findViewById(R.id.hostsListSwitch);
+        htmlFilteringSwitch = findViewById(R.id.htmlFilteringSwitch);
         clearCacheButton = findViewById(R.id.clearCacheButton);
         clearDataButton = findViewById(R.id.clearDataButton);
+        blockingStatsButton = findViewById(R.id.blockingStatsButton);
         searchEngineText = findViewById(R.id.searchEngineText);
+        historyRetentionText = findViewById(R.id.historyRetentionText);
         adBlockerStatusText = findViewById(R.id.adBlockerStatusText);
     }
 
     private void setupEventListeners() {
         clearCacheButton.setOnClickListener(v -> clearCache());
         clearDataButton.setOnClickListener(v -> clearAllData());
+        blockingStatsButton.setOnClickListener(v -> showBlockingStatsDialog());
         searchEngineText.setOnClickListener(v -> showSearchEngineDialog());
+        historyRetentionText.setOnClickListener(v -> showHistoryRetentionDialog());
         
         adBlockerSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
             adBlocker.setAdBlockEnabled(isChecked);
@@ -88,6 +107,27 @@ public class SettingsActivity extends AppCompatActivity {
                 Toast.makeText(this, "Stealth Mode disabled", Toast.LENGTH_SHORT).show();
             }
         });
+        
+        hostsListSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            if (isChecked == adBlocker.isHostsListEnabled()) {
+                return;
+            }
+            adBlocker.setHostsListEnabled(isChecked);
+            if (isChecked) {
+                Toast.makeText(this, "Downloading hosts blocklist", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, "Hosts blocklist removed", Toast.LENGTH_SHORT).show();
+            }
+        });
+        
+        htmlFilteringSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            adBlocker.setHtmlFilteringEnabled(isChecked);
+            if (isChecked) {
+                Toast.makeText(this, "Page script filtering enabled", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, "Page script filtering disabled", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void clearCache() {
@@ -104,8 +144,9 @@ public class SettingsActivity extends AppCompatActivity {
     private void clearAllData() {
         try {
             clearCache();
-            // Clear app databases
-            deleteDatabase("browser.db");
+            // Clear app databases; the shared connection stays open
+            DatabaseHelper.getInstance(this).clearAllData();
+            BookmarkIndex.getInstance(this).clear();
             // Reset ad blocker count
             adBlocker.resetBlockedCount();
             updateAdBlockerStatus();
@@ -127,10 +168,13 @@ public class SettingsActivity extends AppCompatActivity {
     private void loadSettings() {
         SearchEngine currentEngine = searchEnginePrefs.getSelectedSearchEngine();
         searchEngineText.setText(currentEngine.getName());
+        historyRetentionText.setText(historyRetentionPrefs.getRetention().getName());
         
         // Load ad blocker settings
         adBlockerSwitch.setChecked(adBlocker.isAdBlockEnabled());
         stealthModeSwitch.setChecked(adBlocker.isStealthModeEnabled());
+        hostsListSwitch.setChecked(adBlocker.isHostsListEnabled());
+        htmlFilteringSwitch.setChecked(adBlocker.isHtmlFilteringEnabled());
         updateAdBlockerStatus();
     }
     
@@ -151,6 +195,34 @@ public class SettingsActivity extends AppCompatActivity {
         }
     }
 
+    private void showBlockingStatsDialog() {
+        List<BlockingStats.SiteCounters> sites = adBlocker.getBlockingStats().getTopSites(20);
+        StringBuilder message = new StringBuilder();
+        long totalBlocked = 0, totalAllowed = 0, totalBytes = 0;
+        for (BlockingStats.SiteCounters site : sites) {
+            totalBlocked += site.getBlocked();
+            totalAllowed += site.getAllowed();
+            totalBytes += site.getBytesSaved();
+            message.append(site.site).append('\n')
+                    .append(String.format(Locale.US, "  %d blocked, %d allowed, ~%s saved\n",
+                            site.getBlocked(), site.getAllowed(),
+                            Formatter.formatShortFileSize(this, site.getBytesSaved())));
+        }
+        if (sites.isEmpty()) {
+            message.append("No requests have been checked yet.");
+        } else {
+            message.insert(0, String.format(Locale.US, "Top %d sites: %d blocked, %d allowed, ~%s saved\n\n",
+                    sites.size(), totalBlocked, totalAllowed,
+                    Formatter.formatShortFileSize(this, totalBytes)));
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle("Blocking Statistics")
+                .setMessage(message.toString())
+                .setPositiveButton("OK", null)
+                .show();
+    }
+
     private void showSearchEngineDialog() {
         String[] searchEngineNames = searchEnginePrefs.getSearchEngineNames();
         SearchEngine currentEngine = searchEnginePrefs.getSelectedSearchEngine();
@@ -169,4 +241,22 @@ public class SettingsActivity extends AppCompatActivity {
                 .setNegativeButton("Cancel", null)
                 .show();
     }
+
+    private void showHistoryRetentionDialog() {
+        String[] retentionNames = historyRetentionPrefs.getRetentionNames();
+        int currentSelection = historyRetentionPrefs.getRetention().ordinal();
+
+        new AlertDialog.Builder(this)
+                .setTitle("Keep History")
+                .setSingleChoiceItems(retentionNames, currentSelection, (dialog, which) -> {
+                    HistoryRetention selectedRetention = HistoryRetention.fromOrdinal(which);
+                    historyRetentionPrefs.setRetention(selectedRetention);
+                    historyRetentionText.setText(selectedRetention.getName());
+                    // Older history is removed in the background
+                    HistoryPruneWorker.runNow(this);
+                    dialog.dismiss();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
 }
@@ -29,6 +29,30 @@ public class BookmarkAdapter extends RecyclerView.Adapter<BookmarkAdapter.Bookma
         this.listener = listener;
     }
 
+    /**
+     * Append a page of bookmarks below the ones shown.
+     */
+    public void addBookmarks(List<Bookmark> page) {
+        int start = bookmarks.size();
+        bookmarks.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+
+    public void removeBookmark(Bookmark bookmark) {
+        int position = bookmarks.indexOf(bookmark);
+        if (position >= 0) {
+            bookmarks.remove(position);
+            notifyItemRemoved(position);
+        }
+    }
+
+    public void updateBookmark(Bookmark bookmark) {
+        int position = bookmarks.indexOf(bookmark);
+        if (position >= 0) {
+            notifyItemChanged(position);
+        }
+    }
+
     @NonNull
     @Override
     public BookmarkViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
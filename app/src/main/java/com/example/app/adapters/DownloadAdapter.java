@@ -58,6 +58,23 @@ public class DownloadAdapter extends RecyclerView.Adapter<DownloadAdapter.Downlo
         }
     }
 
+    /**
+     * Append a page of downloads below the ones shown.
+     */
+    public void addDownloads(List<DownloadItem> page) {
+        int start = downloads.size();
+        downloads.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+
+    public void removeDownload(DownloadItem downloadItem) {
+        int position = downloads.indexOf(downloadItem);
+        if (position >= 0) {
+            downloads.remove(position);
+            notifyItemRemoved(position);
+        }
+    }
+
     @NonNull
     @Override
     public DownloadViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -1,5 +1,10 @@
 package com.example.app.adapters;
 
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.StyleSpan;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -7,9 +12,11 @@ import android.widget.ImageButton;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.app.R;
+import com.example.app.database.DatabaseHelper;
 import com.example.app.models.HistoryItem;
 
 import java.text.SimpleDateFormat;
@@ -34,6 +41,23 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryV
         this.dateFormat = new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.getDefault());
     }
 
+    /**
+     * Append a page of items below the ones shown.
+     */
+    public void addItems(List<HistoryItem> page) {
+        int start = historyItems.size();
+        historyItems.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+
+    public void removeItem(HistoryItem historyItem) {
+        int position = historyItems.indexOf(historyItem);
+        if (position >= 0) {
+            historyItems.remove(position);
+            notifyItemRemoved(position);
+        }
+    }
+
     @NonNull
     @Override
     public HistoryViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -54,7 +78,7 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryV
     }
 
     class HistoryViewHolder extends RecyclerView.ViewHolder {
-        TextView titleTextView, urlTextView, timeTextView;
+        TextView titleTextView, urlTextView, timeTextView, snippetTextView;
         ImageButton deleteButton;
 
         HistoryViewHolder(@NonNull View itemView) {
@@ -62,6 +86,7 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryV
             titleTextView = itemView.findViewById(R.id.titleTextView);
             urlTextView = itemView.findViewById(R.id.urlTextView);
             timeTextView = itemView.findViewById(R.id.timeTextView);
+            snippetTextView = itemView.findViewById(R.id.snippetTextView);
             deleteButton = itemView.findViewById(R.id.deleteButton);
         }
 
@@ -69,6 +94,12 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryV
             titleTextView.setText(historyItem.getTitle());
             urlTextView.setText(historyItem.getUrl());
             timeTextView.setText(dateFormat.format(new Date(historyItem.getTimestamp())));
+            if (historyItem.getSnippet() != null) {
+                snippetTextView.setText(highlight(historyItem.getSnippet()));
+                snippetTextView.setVisibility(View.VISIBLE);
+            } else {
+                snippetTextView.setVisibility(View.GONE);
+            }
 
             itemView.setOnClickListener(v -> {
                 if (listener != null) {
@@ -90,5 +121,27 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryV
                 }
             });
         }
+
+        // Bold and tint the matched words between the snippet marks
+        private CharSequence highlight(String snippet) {
+            SpannableStringBuilder text = new SpannableStringBuilder();
+            int color = ContextCompat.getColor(itemView.getContext(), R.color.dark_primary);
+            int start = -1;
+            for (int i = 0; i < snippet.length(); i++) {
+                char c = snippet.charAt(i);
+                if (c == DatabaseHelper.SNIPPET_START) {
+                    start = text.length();
+                } else if (c == DatabaseHelper.SNIPPET_END && start >= 0) {
+                    text.setSpan(new StyleSpan(Typeface.BOLD), start, text.length(),
+                            Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                    text.setSpan(new ForegroundColorSpan(color), start, text.length(),
+                            Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                    start = -1;
+                } else {
+                    text.append(c);
+                }
+            }
+            return text;
+        }
     }
 }
@@ -3,19 +3,33 @@ package com.example.app.database;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
 import com.example.app.models.Bookmark;
 import com.example.app.models.DownloadItem;
 import com.example.app.models.HistoryItem;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
+/**
+ * The browser database. One instance per process: the underlying connection
+ * stays open for the life of the process, so the schema and page cache are
+ * kept between calls. Write-ahead logging lets queries from other threads
+ * use the framework's pool of reader connections while writes go through
+ * the single primary connection.
+ */
 public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "browser.db";
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 6;
 
     // Bookmarks table
     private static final String TABLE_BOOKMARKS = "bookmarks";
@@ -23,13 +37,48 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String COLUMN_BOOKMARK_TITLE = "title";
     private static final String COLUMN_BOOKMARK_URL = "url";
     private static final String COLUMN_BOOKMARK_TIMESTAMP = "timestamp";
+    // The columns readBookmarks expects, in order
+    private static final String BOOKMARK_SELECT = "SELECT " + COLUMN_BOOKMARK_ID + ", "
+            + COLUMN_BOOKMARK_TITLE + ", " + COLUMN_BOOKMARK_URL + ", " + COLUMN_BOOKMARK_TIMESTAMP
+            + " FROM " + TABLE_BOOKMARKS;
 
-    // History table
+    // History before version 6, one row per visit
     private static final String TABLE_HISTORY = "history";
-    private static final String COLUMN_HISTORY_ID = "id";
-    private static final String COLUMN_HISTORY_TITLE = "title";
-    private static final String COLUMN_HISTORY_URL = "url";
-    private static final String COLUMN_HISTORY_TIMESTAMP = "timestamp";
+    private static final String TABLE_HISTORY_FTS = "history_fts";
+
+    // Visited URLs, one row each, with a score for ranking them
+    private static final String TABLE_URLS = "urls";
+    private static final String COLUMN_URL_ID = "id";
+    private static final String COLUMN_URL_URL = "url";
+    private static final String COLUMN_URL_TITLE = "title";
+    private static final String COLUMN_URL_VISIT_COUNT = "visit_count";
+    private static final String COLUMN_URL_LAST_VISIT = "last_visit";
+    private static final String COLUMN_URL_FRECENCY = "frecency";
+
+    // Visits, one row each, pointing at the URL visited
+    private static final String TABLE_VISITS = "visits";
+    private static final String COLUMN_VISIT_ID = "id";
+    private static final String COLUMN_VISIT_URL_ID = "url_id";
+    private static final String COLUMN_VISIT_TIMESTAMP = "timestamp";
+
+    // Visits with the title and URL visited, and URLs standing for all
+    // their visits, in the columns readHistory expects
+    private static final String HISTORY_SELECT = "SELECT v." + COLUMN_VISIT_ID + ", u."
+            + COLUMN_URL_TITLE + ", u." + COLUMN_URL_URL + ", v." + COLUMN_VISIT_TIMESTAMP
+            + " FROM " + TABLE_VISITS + " v JOIN " + TABLE_URLS + " u ON u." + COLUMN_URL_ID
+            + " = v." + COLUMN_VISIT_URL_ID;
+    private static final String URL_SELECT = "SELECT 0, u." + COLUMN_URL_TITLE + ", u."
+            + COLUMN_URL_URL + ", u." + COLUMN_URL_LAST_VISIT + " FROM " + TABLE_URLS + " u";
+    // The id and URL of a visit's URL, by visit id, then the visit's time and the URL's frecency
+    private static final String VISIT_URL_QUERY = "SELECT u." + COLUMN_URL_ID + ", u." + COLUMN_URL_URL
+            + ", v." + COLUMN_VISIT_TIMESTAMP + ", u." + COLUMN_URL_FRECENCY
+            + " FROM " + TABLE_VISITS + " v JOIN " + TABLE_URLS + " u ON u." + COLUMN_URL_ID + " = v."
+            + COLUMN_VISIT_URL_ID + " WHERE v." + COLUMN_VISIT_ID + " = ?";
+    private static final String URL_FRECENCY_QUERY = "SELECT " + COLUMN_URL_ID + ", "
+            + COLUMN_URL_FRECENCY + " FROM " + TABLE_URLS + " WHERE " + COLUMN_URL_URL + " = ?";
+
+    // A visit counts half as much for ranking after this long
+    private static final double FRECENCY_HALF_LIFE_MS = 30d * 24 * 60 * 60 * 1000;
 
     // Downloads table
     private static final String TABLE_DOWNLOADS = "downloads";
@@ -43,9 +92,79 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String COLUMN_DOWNLOAD_STATUS = "status";
     private static final String COLUMN_DOWNLOAD_TIMESTAMP = "timestamp";
     private static final String COLUMN_DOWNLOAD_MIMETYPE = "mimetype";
+    // The columns readDownloads expects, in order
+    private static final String DOWNLOAD_SELECT = "SELECT " + COLUMN_DOWNLOAD_ID + ", "
+            + COLUMN_DOWNLOAD_TITLE + ", " + COLUMN_DOWNLOAD_URL + ", " + COLUMN_DOWNLOAD_FILENAME + ", "
+            + COLUMN_DOWNLOAD_FILEPATH + ", " + COLUMN_DOWNLOAD_FILESIZE + ", "
+            + COLUMN_DOWNLOAD_DOWNLOADED_SIZE + ", " + COLUMN_DOWNLOAD_STATUS + ", "
+            + COLUMN_DOWNLOAD_TIMESTAMP + ", " + COLUMN_DOWNLOAD_MIMETYPE + " FROM " + TABLE_DOWNLOADS;
+
+    // Full-text indexes over title and URL words, for suggestions
+    private static final String TABLE_URLS_FTS = "urls_fts";
+    private static final String TABLE_BOOKMARKS_FTS = "bookmarks_fts";
+    // Most recent matches considered when ranking suggestions
+    private static final int SEARCH_CANDIDATES = 200;
+
+    // Text of visited pages, one row per URL; the text lives in the FTS table
+    private static final String TABLE_PAGE_CONTENT = "page_content";
+    private static final String TABLE_PAGE_CONTENT_FTS = "page_content_fts";
+    private static final String COLUMN_PAGE_ID = "id";
+    private static final String COLUMN_PAGE_URL = "url";
+    private static final String COLUMN_PAGE_TITLE = "title";
+    private static final String COLUMN_PAGE_HASH = "content_hash";
+    private static final String COLUMN_PAGE_SIZE = "size";
+    private static final String COLUMN_PAGE_LAST_ACCESS = "last_access";
+    private static final String COLUMN_PAGE_BODY = "body";
+    // A page's stored size is its UTF-8 text times this, to cover the FTS
+    // index built over it. The index measures about 0.6x the text for
+    // ordinary prose, more until segments are merged
+    private static final int PAGE_INDEX_SIZE_FACTOR = 2;
+    // Marks around matched words in page snippets
+    public static final char SNIPPET_START = '\u0001';
+    public static final char SNIPPET_END = '\u0002';
 
-    public DatabaseHelper(Context context) {
+    private static DatabaseHelper instance;
+
+    private DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Runs once, on the primary connection. The cache, temp store and mmap
+     * pragmas are per connection, so they tune writes and transactions only;
+     * reader connections the pool opens later keep SQLite's defaults.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // WAL only needs a sync at checkpoints to stay consistent
+        setPragma(db, "synchronous=NORMAL");
+        setPragma(db, "cache_size=-4096"); // 4MB
+        setPragma(db, "temp_store=MEMORY");
+        setPragma(db, "mmap_size=33554432"); // 32MB
+        // Bookmark REPLACE deletes the old row; its FTS trigger must fire
+        setPragma(db, "recursive_triggers=ON");
+        // Takes effect when a new database gets its first table; older
+        // databases switch over in enableIncrementalVacuum
+        setPragma(db, "auto_vacuum=INCREMENTAL");
+    }
+
+    // Some pragmas answer with a row, which execSQL refuses
+    private static void setPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
     }
 
     @Override
@@ -56,12 +175,6 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 + COLUMN_BOOKMARK_URL + " TEXT UNIQUE,"
                 + COLUMN_BOOKMARK_TIMESTAMP + " INTEGER" + ")";
 
-        String CREATE_HISTORY_TABLE = "CREATE TABLE " + TABLE_HISTORY + "("
-                + COLUMN_HISTORY_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
-                + COLUMN_HISTORY_TITLE + " TEXT,"
-                + COLUMN_HISTORY_URL + " TEXT,"
-                + COLUMN_HISTORY_TIMESTAMP + " INTEGER" + ")";
-
         String CREATE_DOWNLOADS_TABLE = "CREATE TABLE " + TABLE_DOWNLOADS + "("
                 + COLUMN_DOWNLOAD_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
                 + COLUMN_DOWNLOAD_TITLE + " TEXT,"
@@ -75,94 +188,312 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 + COLUMN_DOWNLOAD_MIMETYPE + " TEXT" + ")";
 
         db.execSQL(CREATE_BOOKMARKS_TABLE);
-        db.execSQL(CREATE_HISTORY_TABLE);
         db.execSQL(CREATE_DOWNLOADS_TABLE);
+        createHistoryTables(db);
+        createSearchIndex(db, TABLE_BOOKMARKS_FTS, TABLE_BOOKMARKS, COLUMN_BOOKMARK_ID,
+                COLUMN_BOOKMARK_TITLE, COLUMN_BOOKMARK_URL);
+        createPageContentTables(db);
+        createListIndexes(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BOOKMARKS);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_HISTORY);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_DOWNLOADS);
-        onCreate(db);
+        if (oldVersion < 2) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_BOOKMARKS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_HISTORY);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_DOWNLOADS);
+            onCreate(db);
+            return;
+        }
+        // History is indexed when it moves to the urls table in version 6
+        if (oldVersion < 3) {
+            createSearchIndex(db, TABLE_BOOKMARKS_FTS, TABLE_BOOKMARKS, COLUMN_BOOKMARK_ID,
+                    COLUMN_BOOKMARK_TITLE, COLUMN_BOOKMARK_URL);
+            db.execSQL("INSERT INTO " + TABLE_BOOKMARKS_FTS + "(" + TABLE_BOOKMARKS_FTS + ") VALUES('rebuild')");
+        }
+        if (oldVersion < 4) {
+            createPageContentTables(db);
+        }
+        if (oldVersion < 5) {
+            createListIndexes(db);
+        }
+        if (oldVersion < 6) {
+            migrateHistory(db);
+        }
     }
 
-    // Bookmark methods
-    public long addBookmark(Bookmark bookmark) {
-        SQLiteDatabase db = null;
-        try {
-            db = this.getWritableDatabase();
-            ContentValues values = new ContentValues();
-            values.put(COLUMN_BOOKMARK_TITLE, bookmark.getTitle());
-            values.put(COLUMN_BOOKMARK_URL, bookmark.getUrl());
-            values.put(COLUMN_BOOKMARK_TIMESTAMP, bookmark.getTimestamp());
+    /**
+     * The urls and visits tables and their indexes. Visits page newest
+     * first through the timestamp index, and the frecency index gives the
+     * best ranked URLs without sorting.
+     */
+    private static void createHistoryTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_URLS + "("
+                + COLUMN_URL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + COLUMN_URL_URL + " TEXT UNIQUE NOT NULL,"
+                + COLUMN_URL_TITLE + " TEXT,"
+                + COLUMN_URL_VISIT_COUNT + " INTEGER NOT NULL,"
+                + COLUMN_URL_LAST_VISIT + " INTEGER NOT NULL,"
+                + COLUMN_URL_FRECENCY + " REAL NOT NULL" + ")");
+        db.execSQL("CREATE INDEX idx_urls_frecency ON " + TABLE_URLS
+                + "(" + COLUMN_URL_FRECENCY + ")");
+        db.execSQL("CREATE TABLE " + TABLE_VISITS + "("
+                + COLUMN_VISIT_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + COLUMN_VISIT_URL_ID + " INTEGER NOT NULL,"
+                + COLUMN_VISIT_TIMESTAMP + " INTEGER NOT NULL" + ")");
+        db.execSQL("CREATE INDEX idx_visits_timestamp ON " + TABLE_VISITS
+                + "(" + COLUMN_VISIT_TIMESTAMP + ")");
+        db.execSQL("CREATE INDEX idx_visits_url_id ON " + TABLE_VISITS
+                + "(" + COLUMN_VISIT_URL_ID + ")");
+        createSearchIndex(db, TABLE_URLS_FTS, TABLE_URLS, COLUMN_URL_ID,
+                COLUMN_URL_TITLE, COLUMN_URL_URL);
+    }
+
+    /**
+     * Move the one-row-per-visit history table into urls and visits. Each
+     * URL takes the title of its latest visit, and visits keep their ids so
+     * that the order of the history list is unchanged.
+     */
+    private static void migrateHistory(SQLiteDatabase db) {
+        createHistoryTables(db);
+        // The bare title column comes from the row holding MAX(timestamp)
+        db.execSQL("INSERT INTO " + TABLE_URLS + "(" + COLUMN_URL_URL + ", " + COLUMN_URL_TITLE
+                + ", " + COLUMN_URL_VISIT_COUNT + ", " + COLUMN_URL_LAST_VISIT + ", "
+                + COLUMN_URL_FRECENCY + ") SELECT url, title, COUNT(*), MAX(timestamp), 0 FROM "
+                + TABLE_HISTORY + " WHERE url IS NOT NULL GROUP BY url");
+        db.execSQL("INSERT INTO " + TABLE_VISITS + "(" + COLUMN_VISIT_ID + ", " + COLUMN_VISIT_URL_ID
+                + ", " + COLUMN_VISIT_TIMESTAMP + ") SELECT h.id, u." + COLUMN_URL_ID
+                + ", h.timestamp FROM " + TABLE_HISTORY + " h JOIN " + TABLE_URLS + " u ON u."
+                + COLUMN_URL_URL + " = h.url");
 
-            return db.insertWithOnConflict(TABLE_BOOKMARKS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        // Sum each URL's visits in one pass over the url_id index
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_URLS + " SET "
+                + COLUMN_URL_FRECENCY + " = ? WHERE " + COLUMN_URL_ID + " = ?");
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_VISIT_URL_ID + ", " + COLUMN_VISIT_TIMESTAMP
+                + " FROM " + TABLE_VISITS + " ORDER BY " + COLUMN_VISIT_URL_ID, null);
+        try {
+            long urlId = -1;
+            double frecency = 0;
+            while (cursor.moveToNext()) {
+                if (cursor.getLong(0) != urlId) {
+                    if (urlId != -1) {
+                        setFrecency(update, urlId, frecency);
+                    }
+                    urlId = cursor.getLong(0);
+                    frecency = visitScore(cursor.getLong(1));
+                } else {
+                    frecency = addScore(frecency, visitScore(cursor.getLong(1)));
+                }
+            }
+            if (urlId != -1) {
+                setFrecency(update, urlId, frecency);
+            }
         } finally {
-            if (db != null) {
-                db.close();
+            cursor.close();
+            update.close();
+        }
+
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_HISTORY_FTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_HISTORY);
+    }
+
+    private static void setFrecency(SQLiteStatement update, long urlId, double frecency) {
+        update.bindDouble(1, frecency);
+        update.bindLong(2, urlId);
+        update.executeUpdateDelete();
+    }
+
+    /**
+     * A visit's share of a URL's frecency. The score of a URL is the log of
+     * the sum of 2^(t / half-life) over its visits at times t: every visit
+     * adds to it, and comparing scores ranks URLs as if each visit counted
+     * half as much every {@link #FRECENCY_HALF_LIFE_MS}, without the stored
+     * scores ever having to decay. Logs keep the sums in range.
+     */
+    static double visitScore(long timestamp) {
+        return timestamp * Math.log(2) / FRECENCY_HALF_LIFE_MS;
+    }
+
+    // log(e^a + e^b) without overflow
+    static double addScore(double a, double b) {
+        double max = Math.max(a, b);
+        return max + Math.log1p(Math.exp(Math.min(a, b) - max));
+    }
+
+    /**
+     * The score {@code score} becomes when one of its visits moves from a
+     * time with share {@code from} to one with share {@code to}:
+     * log(e^score - e^from + e^to). When the moved visit was the only one,
+     * rounding can leave the rest at or below nothing, so the result is
+     * then just {@code to}.
+     */
+    static double moveScore(double score, double from, double to) {
+        double others = 1 - Math.exp(from - score);
+        return others > 1e-9 ? score + Math.log(others + Math.exp(to - score)) : to;
+    }
+
+    // Newest-first lists page through these; the row id breaks timestamp ties
+    private static void createListIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_bookmarks_timestamp ON " + TABLE_BOOKMARKS
+                + "(" + COLUMN_BOOKMARK_TIMESTAMP + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_downloads_timestamp ON " + TABLE_DOWNLOADS
+                + "(" + COLUMN_DOWNLOAD_TIMESTAMP + ")");
+    }
+
+    /**
+     * Query for the rows of {@code select} that come after (timestamp, id)
+     * in newest-first order. The first term lets the timestamp index seek
+     * straight to the page; row values would need a newer SQLite.
+     */
+    private static String pageQuery(String select, String timestamp, String id) {
+        return select + " WHERE " + timestamp + " <= ? AND ("
+                + timestamp + " < ? OR " + id + " < ?) ORDER BY " + timestamp + " DESC, "
+                + id + " DESC LIMIT ?";
+    }
+
+    private static String[] pageArgs(long beforeTimestamp, long beforeId, int limit) {
+        String timestamp = String.valueOf(beforeTimestamp);
+        return new String[]{timestamp, timestamp, String.valueOf(beforeId), String.valueOf(limit)};
+    }
+
+    private static void createPageContentTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PAGE_CONTENT + "("
+                + COLUMN_PAGE_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + COLUMN_PAGE_URL + " TEXT UNIQUE,"
+                + COLUMN_PAGE_TITLE + " TEXT,"
+                + COLUMN_PAGE_HASH + " INTEGER,"
+                + COLUMN_PAGE_SIZE + " INTEGER,"
+                + COLUMN_PAGE_LAST_ACCESS + " INTEGER" + ")");
+        db.execSQL("CREATE INDEX idx_page_content_last_access ON " + TABLE_PAGE_CONTENT
+                + "(" + COLUMN_PAGE_LAST_ACCESS + ")");
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_PAGE_CONTENT_FTS + " USING fts4("
+                + COLUMN_PAGE_BODY + ", tokenize=unicode61)");
+    }
+
+    /**
+     * An FTS4 index over the title and URL of {@code table}, reading the text
+     * from the table itself, with prefix indexes so that the first letters of
+     * a word typed in the URL bar are a single lookup. Triggers keep it in
+     * step with the table; updates that leave the title and URL alone do
+     * not touch it.
+     */
+    private static void createSearchIndex(SQLiteDatabase db, String fts, String table,
+                                          String id, String title, String url) {
+        db.execSQL("CREATE VIRTUAL TABLE " + fts + " USING fts4(content=\"" + table + "\", "
+                + title + ", " + url + ", tokenize=unicode61, prefix=\"2,3\")");
+        String newRow = "INSERT INTO " + fts + "(docid, " + title + ", " + url + ") VALUES(new."
+                + id + ", new." + title + ", new." + url + "); END";
+        String oldRow = "DELETE FROM " + fts + " WHERE docid = old." + id + "; END";
+        db.execSQL("CREATE TRIGGER " + fts + "_ai AFTER INSERT ON " + table + " BEGIN " + newRow);
+        db.execSQL("CREATE TRIGGER " + fts + "_bd BEFORE DELETE ON " + table + " BEGIN " + oldRow);
+        String columns = " OF " + title + ", " + url + " ON " + table;
+        db.execSQL("CREATE TRIGGER " + fts + "_bu BEFORE UPDATE" + columns + " BEGIN " + oldRow);
+        db.execSQL("CREATE TRIGGER " + fts + "_au AFTER UPDATE" + columns + " BEGIN " + newRow);
+    }
+
+    /**
+     * Turn what the user typed into an FTS query that needs every word, each
+     * as a prefix. Returns null when there is no word to look for.
+     */
+    static String toMatchQuery(String query) {
+        StringBuilder match = new StringBuilder();
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(query.charAt(i))) i++;
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(query.charAt(i))) i++;
+            if (i > start) {
+                if (match.length() > 0) match.append(' ');
+                // FTS4 takes the prefix star inside the quotes
+                match.append('"').append(query, start, i).append("*\"");
             }
         }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    // The newest matches of an FTS index over the table of select, most recent first
+    private static String searchQuery(String select, String fts, String id, String timestamp) {
+        return select + " JOIN (SELECT docid FROM " + fts + " WHERE " + fts
+                + " MATCH ? ORDER BY docid DESC LIMIT " + SEARCH_CANDIDATES + ") m ON " + id
+                + " = m.docid ORDER BY " + timestamp + " DESC LIMIT ?";
+    }
+
+    // Bookmark methods
+    public long addBookmark(Bookmark bookmark) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_BOOKMARK_TITLE, bookmark.getTitle());
+        values.put(COLUMN_BOOKMARK_URL, bookmark.getUrl());
+        values.put(COLUMN_BOOKMARK_TIMESTAMP, bookmark.getTimestamp());
+
+        return db.insertWithOnConflict(TABLE_BOOKMARKS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
     }
 
     public List<Bookmark> getAllBookmarks() {
-        List<Bookmark> bookmarks = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_BOOKMARKS + " ORDER BY " + COLUMN_BOOKMARK_TIMESTAMP + " DESC";
+        String selectQuery = BOOKMARK_SELECT + " ORDER BY " + COLUMN_BOOKMARK_TIMESTAMP + " DESC";
 
-        SQLiteDatabase db = null;
-        Cursor cursor = null;
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(selectQuery, null);
         try {
-            db = this.getReadableDatabase();
-            cursor = db.rawQuery(selectQuery, null);
-
-            if (cursor.moveToFirst()) {
-                do {
-                    Bookmark bookmark = new Bookmark();
-                    bookmark.setId(cursor.getLong(0));
-                    bookmark.setTitle(cursor.getString(1));
-                    bookmark.setUrl(cursor.getString(2));
-                    bookmark.setTimestamp(cursor.getLong(3));
-                    bookmarks.add(bookmark);
-                } while (cursor.moveToNext());
-            }
+            return readBookmarks(cursor);
         } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-            if (db != null) {
-                db.close();
-            }
+            cursor.close();
         }
-        return bookmarks;
     }
 
-    public void deleteBookmark(long id) {
-        SQLiteDatabase db = null;
+    /**
+     * Up to {@code limit} bookmarks older than the one with
+     * {@code beforeTimestamp} and {@code beforeId}, newest first. Pass
+     * {@code Long.MAX_VALUE} for both to start at the newest.
+     */
+    public List<Bookmark> getBookmarksPage(long beforeTimestamp, long beforeId, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(pageQuery(BOOKMARK_SELECT, COLUMN_BOOKMARK_TIMESTAMP, COLUMN_BOOKMARK_ID),
+                pageArgs(beforeTimestamp, beforeId, limit));
         try {
-            db = this.getWritableDatabase();
-            db.delete(TABLE_BOOKMARKS, COLUMN_BOOKMARK_ID + " = ?", new String[]{String.valueOf(id)});
+            return readBookmarks(cursor);
         } finally {
-            if (db != null) {
-                db.close();
-            }
+            cursor.close();
         }
     }
 
+    public void deleteBookmark(long id) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.delete(TABLE_BOOKMARKS, COLUMN_BOOKMARK_ID + " = ?", new String[]{String.valueOf(id)});
+    }
+
     public boolean isBookmarked(String url) {
-        SQLiteDatabase db = null;
-        Cursor cursor = null;
+        // A single value needs no cursor or window
+        return DatabaseUtils.longForQuery(this.getReadableDatabase(), "SELECT EXISTS(SELECT 1 FROM "
+                + TABLE_BOOKMARKS + " WHERE " + COLUMN_BOOKMARK_URL + " = ?)", new String[]{url}) != 0;
+    }
+
+    /**
+     * Delete the bookmark of {@code url}, if there is one.
+     */
+    public void deleteBookmarkUrl(String url) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.delete(TABLE_BOOKMARKS, COLUMN_BOOKMARK_URL + " = ?", new String[]{url});
+    }
+
+    /**
+     * Hand every bookmarked URL to {@code action} as it is read, without
+     * collecting them first. Only the URL column is read.
+     */
+    public void forEachBookmarkUrl(Consumer<String> action) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_BOOKMARKS, new String[]{COLUMN_BOOKMARK_URL},
+                null, null, null, null, null);
         try {
-            db = this.getReadableDatabase();
-            cursor = db.query(TABLE_BOOKMARKS, null, COLUMN_BOOKMARK_URL + " = ?", 
-                    new String[]{url}, null, null, null);
-            return cursor.getCount() > 0;
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-            if (db != null) {
-                db.close();
+            while (cursor.moveToNext()) {
+                String url = cursor.getString(0);
+                if (url != null) {
+                    action.accept(url);
+                }
             }
+        } finally {
+            cursor.close();
         }
     }
 
@@ -175,29 +506,350 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         
         db.update(TABLE_BOOKMARKS, values, COLUMN_BOOKMARK_ID + " = ?", 
                 new String[]{String.valueOf(bookmark.getId())});
-        db.close();
+    }
+
+    private static List<Bookmark> readBookmarks(Cursor cursor) {
+        List<Bookmark> bookmarks = new ArrayList<>();
+        if (cursor.moveToFirst()) {
+            do {
+                Bookmark bookmark = new Bookmark();
+                bookmark.setId(cursor.getLong(0));
+                bookmark.setTitle(cursor.getString(1));
+                bookmark.setUrl(cursor.getString(2));
+                bookmark.setTimestamp(cursor.getLong(3));
+                bookmarks.add(bookmark);
+            } while (cursor.moveToNext());
+        }
+        return bookmarks;
     }
 
     // History methods
     public long addHistoryItem(HistoryItem historyItem) {
+        saveHistoryItems(Collections.singletonList(historyItem));
+        return historyItem.getId();
+    }
+
+    /**
+     * Add the items without an id as new visits and update the visits of
+     * the others, in one transaction. Inserted items get their visit id.
+     * The visit count and frecency of each URL are updated as it goes.
+     */
+    public void saveHistoryItems(List<HistoryItem> historyItems) {
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_HISTORY_TITLE, historyItem.getTitle());
-        values.put(COLUMN_HISTORY_URL, historyItem.getUrl());
-        values.put(COLUMN_HISTORY_TIMESTAMP, historyItem.getTimestamp());
+        db.beginTransaction();
+        VisitStatements statements = new VisitStatements(db);
+        try {
+            for (HistoryItem historyItem : historyItems) {
+                if (historyItem.getId() > 0 && updateVisit(db, statements, historyItem)) {
+                    continue;
+                }
+                // New, or the visit was deleted meanwhile
+                long urlId = addUrlVisit(db, statements, historyItem.getUrl(),
+                        historyItem.getTitle(), historyItem.getTimestamp());
+                historyItem.setId(statements.insertVisit(urlId, historyItem.getTimestamp()));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            statements.close();
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * The writes of {@link #saveHistoryItems}, compiled once per batch and
+     * bound again for each visit, so no SQL is built or parsed per row.
+     * Statements are not shared between threads, so each batch has its own.
+     */
+    private static final class VisitStatements {
+        private final SQLiteStatement insertVisit;
+        private final SQLiteStatement moveVisit;
+        private final SQLiteStatement insertUrl;
+        private final SQLiteStatement countUrlVisit;
+        private final SQLiteStatement touchUrl;
+        private final SQLiteStatement setUrlTitle;
+
+        VisitStatements(SQLiteDatabase db) {
+            insertVisit = db.compileStatement("INSERT INTO " + TABLE_VISITS + "(" + COLUMN_VISIT_URL_ID
+                    + ", " + COLUMN_VISIT_TIMESTAMP + ") VALUES(?, ?)");
+            moveVisit = db.compileStatement("UPDATE " + TABLE_VISITS + " SET " + COLUMN_VISIT_URL_ID
+                    + " = ?, " + COLUMN_VISIT_TIMESTAMP + " = ? WHERE " + COLUMN_VISIT_ID + " = ?");
+            insertUrl = db.compileStatement("INSERT INTO " + TABLE_URLS + "(" + COLUMN_URL_URL + ", "
+                    + COLUMN_URL_TITLE + ", " + COLUMN_URL_VISIT_COUNT + ", " + COLUMN_URL_LAST_VISIT
+                    + ", " + COLUMN_URL_FRECENCY + ") VALUES(?, ?, 1, ?, ?)");
+            countUrlVisit = db.compileStatement("UPDATE " + TABLE_URLS + " SET "
+                    + COLUMN_URL_VISIT_COUNT + " = " + COLUMN_URL_VISIT_COUNT + " + 1, "
+                    + COLUMN_URL_LAST_VISIT + " = MAX(" + COLUMN_URL_LAST_VISIT + ", ?), "
+                    + COLUMN_URL_FRECENCY + " = ? WHERE " + COLUMN_URL_ID + " = ?");
+            touchUrl = db.compileStatement("UPDATE " + TABLE_URLS + " SET " + COLUMN_URL_LAST_VISIT
+                    + " = MAX(" + COLUMN_URL_LAST_VISIT + ", ?), " + COLUMN_URL_FRECENCY + " = ? WHERE "
+                    + COLUMN_URL_ID + " = ?");
+            // Only a changed title is written, so the search index is left alone
+            setUrlTitle = db.compileStatement("UPDATE " + TABLE_URLS + " SET " + COLUMN_URL_TITLE
+                    + " = ?1 WHERE " + COLUMN_URL_ID + " = ?2 AND " + COLUMN_URL_TITLE + " IS NOT ?1");
+        }
+
+        long insertVisit(long urlId, long timestamp) {
+            insertVisit.bindLong(1, urlId);
+            insertVisit.bindLong(2, timestamp);
+            return insertVisit.executeInsert();
+        }
 
-        long id = db.insert(TABLE_HISTORY, null, values);
-        db.close();
-        return id;
+        void moveVisit(long visitId, long urlId, long timestamp) {
+            moveVisit.bindLong(1, urlId);
+            moveVisit.bindLong(2, timestamp);
+            moveVisit.bindLong(3, visitId);
+            moveVisit.executeUpdateDelete();
+        }
+
+        long insertUrl(String url, String title, long timestamp, double frecency) {
+            insertUrl.bindString(1, url);
+            bindString(insertUrl, 2, title);
+            insertUrl.bindLong(3, timestamp);
+            insertUrl.bindDouble(4, frecency);
+            return insertUrl.executeInsert();
+        }
+
+        void countUrlVisit(long urlId, long timestamp, double frecency) {
+            countUrlVisit.bindLong(1, timestamp);
+            countUrlVisit.bindDouble(2, frecency);
+            countUrlVisit.bindLong(3, urlId);
+            countUrlVisit.executeUpdateDelete();
+        }
+
+        void touchUrl(long urlId, long timestamp, double frecency, String title) {
+            touchUrl.bindLong(1, timestamp);
+            touchUrl.bindDouble(2, frecency);
+            touchUrl.bindLong(3, urlId);
+            touchUrl.executeUpdateDelete();
+            setUrlTitle(urlId, title);
+        }
+
+        void setUrlTitle(long urlId, String title) {
+            if (title == null) return;
+            setUrlTitle.bindString(1, title);
+            setUrlTitle.bindLong(2, urlId);
+            setUrlTitle.executeUpdateDelete();
+        }
+
+        void close() {
+            insertVisit.close();
+            moveVisit.close();
+            insertUrl.close();
+            countUrlVisit.close();
+            touchUrl.close();
+            setUrlTitle.close();
+        }
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Move a visit already written to the item's time, and to its URL if a
+     * late redirect changed that. Returns false if the visit is gone.
+     */
+    private static boolean updateVisit(SQLiteDatabase db, VisitStatements statements,
+                                       HistoryItem historyItem) {
+        long urlId = -1;
+        String url = null;
+        long oldTimestamp = 0;
+        double frecency = 0;
+        Cursor cursor = db.rawQuery(VISIT_URL_QUERY, new String[]{String.valueOf(historyItem.getId())});
+        try {
+            if (cursor.moveToFirst()) {
+                urlId = cursor.getLong(0);
+                url = cursor.getString(1);
+                oldTimestamp = cursor.getLong(2);
+                frecency = cursor.getDouble(3);
+            }
+        } finally {
+            cursor.close();
+        }
+        if (url == null) {
+            return false;
+        }
+
+        if (url.equals(historyItem.getUrl())) {
+            // A reload; the visit already counts towards the URL, at its old time
+            statements.moveVisit(historyItem.getId(), urlId, historyItem.getTimestamp());
+            statements.touchUrl(urlId, historyItem.getTimestamp(),
+                    moveScore(frecency, visitScore(oldTimestamp), visitScore(historyItem.getTimestamp())),
+                    historyItem.getTitle());
+        } else {
+            long newUrlId = addUrlVisit(db, statements, historyItem.getUrl(),
+                    historyItem.getTitle(), historyItem.getTimestamp());
+            statements.moveVisit(historyItem.getId(), newUrlId, historyItem.getTimestamp());
+            removeUrlVisit(db, urlId, url);
+        }
+        return true;
+    }
+
+    /**
+     * Count a visit at {@code timestamp} towards {@code url}, adding the URL
+     * if it is new, and return the URL's id.
+     */
+    private static long addUrlVisit(SQLiteDatabase db, VisitStatements statements, String url,
+                                    String title, long timestamp) {
+        long urlId = -1;
+        double frecency = 0;
+        Cursor cursor = db.rawQuery(URL_FRECENCY_QUERY, new String[]{url});
+        try {
+            if (cursor.moveToFirst()) {
+                urlId = cursor.getLong(0);
+                frecency = cursor.getDouble(1);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (urlId == -1) {
+            return statements.insertUrl(url, title, timestamp, visitScore(timestamp));
+        }
+        statements.countUrlVisit(urlId, timestamp, addScore(frecency, visitScore(timestamp)));
+        statements.setUrlTitle(urlId, title);
+        return urlId;
+    }
+
+    /**
+     * Take a deleted visit off its URL. The URL and its page text go with
+     * its last visit; otherwise its count, last visit and frecency are
+     * worked out again from the visits left.
+     */
+    private static void removeUrlVisit(SQLiteDatabase db, long urlId, String url) {
+        String[] args = {String.valueOf(urlId)};
+        int count = 0;
+        long lastVisit = 0;
+        double frecency = 0;
+        Cursor cursor = db.query(TABLE_VISITS, new String[]{COLUMN_VISIT_TIMESTAMP},
+                COLUMN_VISIT_URL_ID + " = ?", args, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                long timestamp = cursor.getLong(0);
+                frecency = count == 0 ? visitScore(timestamp) : addScore(frecency, visitScore(timestamp));
+                lastVisit = Math.max(lastVisit, timestamp);
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (count == 0) {
+            db.delete(TABLE_URLS, COLUMN_URL_ID + " = ?", args);
+            deletePageContent(db, COLUMN_PAGE_URL + " = ?", new String[]{url});
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_URL_VISIT_COUNT, count);
+        values.put(COLUMN_URL_LAST_VISIT, lastVisit);
+        values.put(COLUMN_URL_FRECENCY, frecency);
+        db.update(TABLE_URLS, values, COLUMN_URL_ID + " = ?", args);
     }
 
     public List<HistoryItem> getAllHistory() {
-        List<HistoryItem> historyItems = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_HISTORY + " ORDER BY " + COLUMN_HISTORY_TIMESTAMP + " DESC";
+        String selectQuery = HISTORY_SELECT + " ORDER BY v." + COLUMN_VISIT_TIMESTAMP + " DESC";
 
         SQLiteDatabase db = this.getReadableDatabase();
         Cursor cursor = db.rawQuery(selectQuery, null);
+        try {
+            return readHistory(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Up to {@code limit} visits older than the one with
+     * {@code beforeTimestamp} and {@code beforeId}, newest first. Pass
+     * {@code Long.MAX_VALUE} for both to start at the newest.
+     */
+    public List<HistoryItem> getHistoryPage(long beforeTimestamp, long beforeId, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(pageQuery(HISTORY_SELECT, "v." + COLUMN_VISIT_TIMESTAMP,
+                "v." + COLUMN_VISIT_ID), pageArgs(beforeTimestamp, beforeId, limit));
+        try {
+            return readHistory(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * The {@code limit} URLs with the highest frecency, read in order from
+     * its index. Items stand for every visit to their URL, so have no id.
+     */
+    public List<HistoryItem> getTopSites(int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(URL_SELECT + " ORDER BY u." + COLUMN_URL_FRECENCY + " DESC LIMIT ?",
+                new String[]{String.valueOf(limit)});
+        try {
+            return readHistory(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void clearHistory() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_VISITS, null, null);
+            db.delete(TABLE_URLS, null, null);
+            clearPageContent(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void deleteHistoryItem(long id) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long urlId = -1;
+            String url = null;
+            Cursor cursor = db.rawQuery(VISIT_URL_QUERY, new String[]{String.valueOf(id)});
+            try {
+                if (cursor.moveToFirst()) {
+                    urlId = cursor.getLong(0);
+                    url = cursor.getString(1);
+                }
+            } finally {
+                cursor.close();
+            }
+            if (url != null) {
+                db.delete(TABLE_VISITS, COLUMN_VISIT_ID + " = ?", new String[]{String.valueOf(id)});
+                removeUrlVisit(db, urlId, url);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Delete every visit to {@code url} and the page's stored text.
+     */
+    public void deleteHistoryUrl(String url) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_VISITS, COLUMN_VISIT_URL_ID + " IN (SELECT " + COLUMN_URL_ID + " FROM "
+                    + TABLE_URLS + " WHERE " + COLUMN_URL_URL + " = ?)", new String[]{url});
+            db.delete(TABLE_URLS, COLUMN_URL_URL + " = ?", new String[]{url});
+            deletePageContent(db, COLUMN_PAGE_URL + " = ?", new String[]{url});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
 
+    private static List<HistoryItem> readHistory(Cursor cursor) {
+        List<HistoryItem> historyItems = new ArrayList<>();
         if (cursor.moveToFirst()) {
             do {
                 HistoryItem historyItem = new HistoryItem();
@@ -208,75 +860,177 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 historyItems.add(historyItem);
             } while (cursor.moveToNext());
         }
-
-        cursor.close();
-        db.close();
         return historyItems;
     }
 
-    public void clearHistory() {
+    // Page content methods
+
+    /**
+     * Store the text of a visited page and mark it used. Text equal to what
+     * is stored for the URL, by hash, only refreshes the access time. Least
+     * recently used pages are then evicted until the stored text and its
+     * full-text index fit in {@code maxBytes}.
+     */
+    public void savePageContent(String url, String title, String text, long hash, long maxBytes) {
         SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_HISTORY, null, null);
-        db.close();
+        long now = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_PAGE_TITLE, title);
+            values.put(COLUMN_PAGE_LAST_ACCESS, now);
+            int unchanged = db.update(TABLE_PAGE_CONTENT, values,
+                    COLUMN_PAGE_URL + " = ? AND " + COLUMN_PAGE_HASH + " = ?",
+                    new String[]{url, String.valueOf(hash)});
+            if (unchanged == 0) {
+                deletePageContent(db, COLUMN_PAGE_URL + " = ?", new String[]{url});
+                values.put(COLUMN_PAGE_URL, url);
+                values.put(COLUMN_PAGE_HASH, hash);
+                values.put(COLUMN_PAGE_SIZE,
+                        (long) text.getBytes(StandardCharsets.UTF_8).length * PAGE_INDEX_SIZE_FACTOR);
+                long id = db.insert(TABLE_PAGE_CONTENT, null, values);
+
+                ContentValues body = new ContentValues();
+                body.put("docid", id);
+                body.put(COLUMN_PAGE_BODY, text);
+                db.insert(TABLE_PAGE_CONTENT_FTS, null, body);
+                evictPageContent(db, maxBytes);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
     }
 
-    public void deleteHistoryItem(long id) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_HISTORY, COLUMN_HISTORY_ID + " = ?", new String[]{String.valueOf(id)});
-        db.close();
+    // Drop least recently used pages while the stored text and index are over budget
+    private static void evictPageContent(SQLiteDatabase db, long maxBytes) {
+        long total = 0;
+        Cursor cursor = db.rawQuery("SELECT SUM(" + COLUMN_PAGE_SIZE + ") FROM " + TABLE_PAGE_CONTENT, null);
+        try {
+            if (cursor.moveToFirst()) {
+                total = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        List<Long> evicted = new ArrayList<>();
+        cursor = db.query(TABLE_PAGE_CONTENT, new String[]{COLUMN_PAGE_ID, COLUMN_PAGE_SIZE},
+                null, null, null, null, COLUMN_PAGE_LAST_ACCESS + " ASC");
+        try {
+            while (total > maxBytes && cursor.moveToNext()) {
+                evicted.add(cursor.getLong(0));
+                total -= cursor.getLong(1);
+            }
+        } finally {
+            cursor.close();
+        }
+        for (long id : evicted) {
+            String[] args = {String.valueOf(id)};
+            db.delete(TABLE_PAGE_CONTENT_FTS, "docid = ?", args);
+            db.delete(TABLE_PAGE_CONTENT, COLUMN_PAGE_ID + " = ?", args);
+        }
     }
 
-    // Search methods for suggestions
-    public List<HistoryItem> searchHistory(String query, int limit) {
+    private static void deletePageContent(SQLiteDatabase db, String where, String[] args) {
+        Cursor cursor = db.query(TABLE_PAGE_CONTENT, new String[]{COLUMN_PAGE_ID},
+                where, args, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                db.delete(TABLE_PAGE_CONTENT_FTS, "docid = ?", new String[]{cursor.getString(0)});
+            }
+        } finally {
+            cursor.close();
+        }
+        db.delete(TABLE_PAGE_CONTENT, where, args);
+    }
+
+    private static void clearPageContent(SQLiteDatabase db) {
+        db.delete(TABLE_PAGE_CONTENT_FTS, null, null);
+        db.delete(TABLE_PAGE_CONTENT, null, null);
+    }
+
+    /**
+     * Visited pages whose text contains every word of {@code query}, most
+     * recently indexed first. Each item's snippet has the matched words
+     * between {@link #SNIPPET_START} and {@link #SNIPPET_END}.
+     */
+    public List<HistoryItem> searchPageContent(String query, int limit) {
         List<HistoryItem> historyItems = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_HISTORY + 
-                " WHERE " + COLUMN_HISTORY_TITLE + " LIKE ? OR " + COLUMN_HISTORY_URL + " LIKE ?" +
-                " ORDER BY " + COLUMN_HISTORY_TIMESTAMP + " DESC LIMIT ?";
+        String match = toMatchQuery(query);
+        if (match == null) {
+            return historyItems;
+        }
+        String selectQuery = "SELECT p." + COLUMN_PAGE_ID + ", p." + COLUMN_PAGE_TITLE
+                + ", p." + COLUMN_PAGE_URL + ", p." + COLUMN_PAGE_LAST_ACCESS
+                + ", snippet(" + TABLE_PAGE_CONTENT_FTS + ", char(1), char(2), '…', -1, 16)"
+                + " FROM " + TABLE_PAGE_CONTENT_FTS + " JOIN " + TABLE_PAGE_CONTENT + " p ON p."
+                + COLUMN_PAGE_ID + " = " + TABLE_PAGE_CONTENT_FTS + ".docid WHERE "
+                + TABLE_PAGE_CONTENT_FTS + " MATCH ? ORDER BY " + TABLE_PAGE_CONTENT_FTS
+                + ".docid DESC LIMIT ?";
 
         SQLiteDatabase db = this.getReadableDatabase();
-        String searchPattern = "%" + query + "%";
-        Cursor cursor = db.rawQuery(selectQuery, new String[]{searchPattern, searchPattern, String.valueOf(limit)});
-
-        if (cursor.moveToFirst()) {
-            do {
+        Cursor cursor = db.rawQuery(selectQuery, new String[]{match, String.valueOf(limit)});
+        try {
+            while (cursor.moveToNext()) {
                 HistoryItem historyItem = new HistoryItem();
-                historyItem.setId(cursor.getLong(0));
                 historyItem.setTitle(cursor.getString(1));
                 historyItem.setUrl(cursor.getString(2));
                 historyItem.setTimestamp(cursor.getLong(3));
+                historyItem.setSnippet(cursor.getString(4));
                 historyItems.add(historyItem);
-            } while (cursor.moveToNext());
+            }
+        } finally {
+            cursor.close();
         }
-
-        cursor.close();
-        db.close();
         return historyItems;
     }
 
-    public List<Bookmark> searchBookmarks(String query, int limit) {
-        List<Bookmark> bookmarks = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_BOOKMARKS + 
-                " WHERE " + COLUMN_BOOKMARK_TITLE + " LIKE ? OR " + COLUMN_BOOKMARK_URL + " LIKE ?" +
-                " ORDER BY " + COLUMN_BOOKMARK_TIMESTAMP + " DESC LIMIT ?";
+    // Search methods for suggestions
+
+    /**
+     * URLs whose title or URL has every word of {@code query}, highest
+     * frecency first. Items stand for every visit to their URL, so have no
+     * id. URLs are read down the frecency index and kept if they match,
+     * so nothing is sorted: a short prefix that matches nearly every URL
+     * stops after {@code limit} rows, and only a rare word walks further.
+     */
+    public List<HistoryItem> searchHistory(String query, int limit) {
+        String match = toMatchQuery(query);
+        if (match == null) {
+            return new ArrayList<>();
+        }
+        // Without INDEXED BY, SQLite looks up each match by id and then sorts
+        String selectQuery = URL_SELECT + " INDEXED BY idx_urls_frecency WHERE u." + COLUMN_URL_ID
+                + " IN (SELECT docid FROM " + TABLE_URLS_FTS + " WHERE " + TABLE_URLS_FTS
+                + " MATCH ?) ORDER BY u." + COLUMN_URL_FRECENCY + " DESC LIMIT ?";
 
         SQLiteDatabase db = this.getReadableDatabase();
-        String searchPattern = "%" + query + "%";
-        Cursor cursor = db.rawQuery(selectQuery, new String[]{searchPattern, searchPattern, String.valueOf(limit)});
+        Cursor cursor = db.rawQuery(selectQuery, new String[]{match, String.valueOf(limit)});
+        try {
+            return readHistory(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
 
-        if (cursor.moveToFirst()) {
-            do {
-                Bookmark bookmark = new Bookmark();
-                bookmark.setId(cursor.getLong(0));
-                bookmark.setTitle(cursor.getString(1));
-                bookmark.setUrl(cursor.getString(2));
-                bookmark.setTimestamp(cursor.getLong(3));
-                bookmarks.add(bookmark);
-            } while (cursor.moveToNext());
+    public List<Bookmark> searchBookmarks(String query, int limit) {
+        String match = toMatchQuery(query);
+        if (match == null) {
+            return new ArrayList<>();
         }
+        String selectQuery = searchQuery(BOOKMARK_SELECT, TABLE_BOOKMARKS_FTS,
+                TABLE_BOOKMARKS + "." + COLUMN_BOOKMARK_ID, COLUMN_BOOKMARK_TIMESTAMP);
 
-        cursor.close();
-        db.close();
-        return bookmarks;
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(selectQuery, new String[]{match, String.valueOf(limit)});
+        try {
+            return readBookmarks(cursor);
+        } finally {
+            cursor.close();
+        }
     }
 
     // Download methods
@@ -293,18 +1047,39 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_DOWNLOAD_TIMESTAMP, downloadItem.getTimestamp());
         values.put(COLUMN_DOWNLOAD_MIMETYPE, downloadItem.getMimeType());
 
-        long id = db.insert(TABLE_DOWNLOADS, null, values);
-        db.close();
-        return id;
+        return db.insert(TABLE_DOWNLOADS, null, values);
     }
 
     public List<DownloadItem> getAllDownloads() {
-        List<DownloadItem> downloadItems = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_DOWNLOADS + " ORDER BY " + COLUMN_DOWNLOAD_TIMESTAMP + " DESC";
+        String selectQuery = DOWNLOAD_SELECT + " ORDER BY " + COLUMN_DOWNLOAD_TIMESTAMP + " DESC";
 
         SQLiteDatabase db = this.getReadableDatabase();
         Cursor cursor = db.rawQuery(selectQuery, null);
+        try {
+            return readDownloads(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Up to {@code limit} downloads older than the one with
+     * {@code beforeTimestamp} and {@code beforeId}, newest first. Pass
+     * {@code Long.MAX_VALUE} for both to start at the newest.
+     */
+    public List<DownloadItem> getDownloadsPage(long beforeTimestamp, long beforeId, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(pageQuery(DOWNLOAD_SELECT, COLUMN_DOWNLOAD_TIMESTAMP, COLUMN_DOWNLOAD_ID),
+                pageArgs(beforeTimestamp, beforeId, limit));
+        try {
+            return readDownloads(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
 
+    private static List<DownloadItem> readDownloads(Cursor cursor) {
+        List<DownloadItem> downloadItems = new ArrayList<>();
         if (cursor.moveToFirst()) {
             do {
                 DownloadItem downloadItem = new DownloadItem();
@@ -321,16 +1096,12 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 downloadItems.add(downloadItem);
             } while (cursor.moveToNext());
         }
-
-        cursor.close();
-        db.close();
         return downloadItems;
     }
 
     public void deleteDownloadItem(long id) {
         SQLiteDatabase db = this.getWritableDatabase();
         db.delete(TABLE_DOWNLOADS, COLUMN_DOWNLOAD_ID + " = ?", new String[]{String.valueOf(id)});
-        db.close();
     }
 
     public void updateDownload(DownloadItem downloadItem) {
@@ -342,23 +1113,144 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         
         db.update(TABLE_DOWNLOADS, values, COLUMN_DOWNLOAD_ID + " = ?", 
                  new String[]{String.valueOf(downloadItem.getId())});
-        db.close();
     }
 
-    public void updateDownloadProgress(DownloadItem downloadItem) {
-        // Optimized method for frequent progress updates
+    /**
+     * Write the size, progress and status of several downloads in one
+     * transaction.
+     */
+    public void updateDownloads(List<DownloadItem> downloadItems) {
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_DOWNLOAD_DOWNLOADED_SIZE, downloadItem.getDownloadedSize());
-        
-        db.update(TABLE_DOWNLOADS, values, COLUMN_DOWNLOAD_ID + " = ?", 
-                 new String[]{String.valueOf(downloadItem.getId())});
-        db.close();
+        db.beginTransaction();
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_DOWNLOADS + " SET "
+                + COLUMN_DOWNLOAD_DOWNLOADED_SIZE + " = ?, " + COLUMN_DOWNLOAD_STATUS + " = ?, "
+                + COLUMN_DOWNLOAD_FILESIZE + " = ? WHERE " + COLUMN_DOWNLOAD_ID + " = ?");
+        try {
+            for (DownloadItem downloadItem : downloadItems) {
+                update.bindLong(1, downloadItem.getDownloadedSize());
+                update.bindLong(2, downloadItem.getStatus());
+                update.bindLong(3, downloadItem.getFileSize());
+                update.bindLong(4, downloadItem.getId());
+                update.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            update.close();
+            db.endTransaction();
+        }
     }
 
     public void clearDownloads() {
         SQLiteDatabase db = this.getWritableDatabase();
         db.delete(TABLE_DOWNLOADS, null, null);
-        db.close();
+    }
+
+    // Retention methods
+
+    /**
+     * Delete up to {@code limit} of the oldest visits from before
+     * {@code beforeTimestamp} in one transaction, updating or dropping
+     * their URLs. Returns how many were deleted, so fewer than
+     * {@code limit} means there are none left to prune.
+     */
+    public int pruneOldestVisits(long beforeTimestamp, int limit) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE_VISITS + " WHERE "
+                + COLUMN_VISIT_ID + " = ?");
+        try {
+            List<Long> visitIds = new ArrayList<>();
+            Map<Long, String> urls = new HashMap<>();
+            Cursor cursor = db.rawQuery("SELECT v." + COLUMN_VISIT_ID + ", u." + COLUMN_URL_ID
+                    + ", u." + COLUMN_URL_URL + " FROM " + TABLE_VISITS + " v JOIN " + TABLE_URLS
+                    + " u ON u." + COLUMN_URL_ID + " = v." + COLUMN_VISIT_URL_ID + " WHERE v."
+                    + COLUMN_VISIT_TIMESTAMP + " < ? ORDER BY v." + COLUMN_VISIT_TIMESTAMP + " LIMIT ?",
+                    new String[]{String.valueOf(beforeTimestamp), String.valueOf(limit)});
+            try {
+                while (cursor.moveToNext()) {
+                    visitIds.add(cursor.getLong(0));
+                    urls.put(cursor.getLong(1), cursor.getString(2));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            for (long visitId : visitIds) {
+                delete.bindLong(1, visitId);
+                delete.executeUpdateDelete();
+            }
+            for (Map.Entry<Long, String> url : urls.entrySet()) {
+                removeUrlVisit(db, url.getKey(), url.getValue());
+            }
+            db.setTransactionSuccessful();
+            return visitIds.size();
+        } finally {
+            delete.close();
+            db.endTransaction();
+        }
+    }
+
+    public long getVisitCount() {
+        return DatabaseUtils.queryNumEntries(this.getReadableDatabase(), TABLE_VISITS);
+    }
+
+    /**
+     * Size of the database file less its free pages, which is what the
+     * next vacuum would leave.
+     */
+    public long getUsedBytes() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        long pages = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null)
+                - DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        return pages * DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+    }
+
+    public boolean isIncrementalVacuumEnabled() {
+        // 2 is INCREMENTAL
+        return DatabaseUtils.longForQuery(this.getReadableDatabase(), "PRAGMA auto_vacuum", null) == 2;
+    }
+
+    /**
+     * Switch a database created without incremental vacuum over to it. This
+     * rebuilds the whole file with VACUUM, so it is slow and blocks writes
+     * while it runs; do it only in idle background work.
+     */
+    public void enableIncrementalVacuum() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        setPragma(db, "auto_vacuum=INCREMENTAL");
+        db.execSQL("VACUUM");
+    }
+
+    /**
+     * Give the free pages left by deletes back to the file system. Does
+     * nothing until incremental vacuum is enabled.
+     */
+    public void incrementalVacuum() {
+        // The pragma frees one page per row stepped, so read every row
+        Cursor cursor = this.getWritableDatabase().rawQuery("PRAGMA incremental_vacuum", null);
+        try {
+            cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Empty every table. The connection stays open, so this replaces
+     * deleting the database file.
+     */
+    public void clearAllData() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_BOOKMARKS, null, null);
+            db.delete(TABLE_VISITS, null, null);
+            db.delete(TABLE_URLS, null, null);
+            db.delete(TABLE_DOWNLOADS, null, null);
+            clearPageContent(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
     }
 }
@@ -5,6 +5,8 @@ public class HistoryItem {
     private String title;
     private String url;
     private long timestamp;
+    // Matching text of the page, for page content search results
+    private String snippet;
 
     public HistoryItem() {}
 
@@ -45,4 +47,12 @@ public class HistoryItem {
     public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
     }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public void setSnippet(String snippet) {
+        this.snippet = snippet;
+    }
 }
@@ -0,0 +1,55 @@
+package com.example.app.models;
+
+public enum HistoryRetention {
+    FOREVER("Forever", 0, 0, 0),
+    ONE_WEEK("1 week", days(7), 0, 0),
+    ONE_MONTH("1 month", days(30), 0, 0),
+    THREE_MONTHS("3 months", days(90), 0, 0),
+    ONE_YEAR("1 year", days(365), 0, 0),
+    VISITS_10000("Latest 10,000 visits", 0, 10000, 0),
+    SIZE_50MB("Up to 50 MB", 0, 0, 50L * 1024 * 1024);
+
+    private final String name;
+    // Zero means no limit of that kind
+    private final long maxAgeMs;
+    private final long maxVisits;
+    private final long maxBytes;
+
+    HistoryRetention(String name, long maxAgeMs, long maxVisits, long maxBytes) {
+        this.name = name;
+        this.maxAgeMs = maxAgeMs;
+        this.maxVisits = maxVisits;
+        this.maxBytes = maxBytes;
+    }
+
+    private static long days(int days) {
+        return days * 24L * 60 * 60 * 1000;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getMaxAgeMs() {
+        return maxAgeMs;
+    }
+
+    public long getMaxVisits() {
+        return maxVisits;
+    }
+
+    /**
+     * Limit on the database file, not counting free pages.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public static HistoryRetention fromOrdinal(int ordinal) {
+        HistoryRetention[] retentions = values();
+        if (ordinal >= 0 && ordinal < retentions.length) {
+            return retentions[ordinal];
+        }
+        return THREE_MONTHS; // Default fallback
+    }
+}
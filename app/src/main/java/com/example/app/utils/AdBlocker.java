@@ -6,29 +6,83 @@ import android.webkit.WebResourceRequest;
 import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.util.Log;
+import android.util.LruCache;
+import android.webkit.ServiceWorkerClient;
+import android.webkit.ServiceWorkerController;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 public class AdBlocker {
     private static final String TAG = "AdBlocker";
     private static final String PREFS_NAME = "adblock_prefs";
+    private static final String SITE_STATS_PREFS_NAME = "adblock_site_stats";
     private static final String KEY_ADBLOCK_ENABLED = "adblock_enabled";
     private static final String KEY_STEALTH_MODE = "stealth_mode";
+    private static final String KEY_HTML_FILTERING = "html_filtering";
+    private static final String KEY_PROFILER_ENABLED = "profiler_enabled";
+    // One request in this many is timed while profiling
+    private static final int PROFILER_SAMPLE_RATE = 64;
+    private static final String KEY_BLOCKED_COUNT = "blocked_count";
+    private static final long STATS_FLUSH_INTERVAL_SECONDS = 30;
+    private static final int VERDICT_CACHE_SIZE = 4096;
+    private static final String SNAPSHOT_FILE = "adblock_rules.bin";
+    private static final int VERDICT_ALLOW = 0;
+    private static final int VERDICT_BLOCK = 1;
+    // Mixed into cache keys so stealth and normal verdicts never collide
+    private static final long STEALTH_KEY_SALT = 0x9E3779B97F4A7C15L;
+    // Mixed with the engine generation so verdicts of a replaced engine are never reused
+    private static final long GENERATION_KEY_SALT = 0xC2B2AE3D27D4EB4FL;
+    // The same URL may be allowed as one type and blocked as another
+    private static final long TYPE_KEY_SALT = 0x165667B19E3779F9L;
+    private static final long HOST_KEY_SALT = 0x27D4EB2F165667C5L;
+    // Characters of element hiding scripts kept per host
+    private static final int COSMETIC_CACHE_CHARS = 1024 * 1024;
+    private static final String GENERIC_STYLE_ID = "__adblock_generic_css";
+    private static final String SITE_STYLE_ID = "__adblock_site_css";
     
     private final SharedPreferences prefs;
-    private final Set<String> blockedDomains;
-    private final Set<Pattern> blockedPatterns;
-    private final Set<Pattern> scriptPatterns;
-    private final ConcurrentHashMap<String, Boolean> domainCache;
-    private final ConcurrentHashMap<String, Boolean> urlCache;
+    private final VerdictCache verdictCache;
+    private final FilterProfiler profiler = new FilterProfiler(PROFILER_SAMPLE_RATE);
+    private final BlockingStats blockingStats;
+    private final PageContextTracker pageContexts = new PageContextTracker();
+    private final FilterListManager filterLists;
+    private final File snapshotFile;
+    // Replaced as a whole when filter lists change; readers never lock
+    private final AtomicReference<FilterEngine> engine = new AtomicReference<>();
+    // Main thread only: element hiding scripts by host, and the generic one
+    private final LruCache<String, StyleScript> siteStyleScripts =
+        new LruCache<String, StyleScript>(COSMETIC_CACHE_CHARS) {
+            @Override
+            protected int sizeOf(String host, StyleScript script) {
+                return host.length() + script.script.length();
+            }
+        };
+    private StyleScript genericStyleScript;
+    
+    private static AdBlocker instance;
+    
+    // Blocked requests are counted in memory and persisted periodically: the
+    // stored total is blockedCountBase plus everything counted this session
+    private final LongAdder sessionBlockedCount = new LongAdder();
+    private final ScheduledExecutorService backgroundExecutor;
+    private final Object flushLock = new Object();
+    private volatile long blockedCountBase;
+    private long lastPersistedCount;
+    // Service worker fetches of this session, a category of their own in the stats
+    private final LongAdder serviceWorkerRequestCount = new LongAdder();
+    private final LongAdder serviceWorkerBlockedCount = new LongAdder();
+    private boolean serviceWorkerClientRegistered;
     
     // Common ad-serving domains and patterns
     private static final String[] AD_DOMAINS = {
@@ -280,34 +334,152 @@ public class AdBlocker {
         ".*10010.*\\.js"
     };
     
-    public AdBlocker(Context context) {
+    public static synchronized AdBlocker getInstance(Context context) {
+        if (instance == null) {
+            instance = new AdBlocker(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    /**
+     * Persist pending statistics if the ad blocker has been created; safe to call
+     * from lifecycle callbacks such as onTrimMemory.
+     */
+    public static void flushPendingStatistics() {
+        AdBlocker adBlocker;
+        synchronized (AdBlocker.class) {
+            adBlocker = instance;
+        }
+        if (adBlocker != null) {
+            adBlocker.flushStatistics();
+        }
+    }
+    
+    private AdBlocker(Context context) {
         prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        blockedDomains = new HashSet<>();
-        blockedPatterns = new HashSet<>();
-        scriptPatterns = new HashSet<>();
-        domainCache = new ConcurrentHashMap<>();
-        urlCache = new ConcurrentHashMap<>();
+        blockedCountBase = prefs.getInt(KEY_BLOCKED_COUNT, 0);
+        lastPersistedCount = blockedCountBase;
+        verdictCache = new VerdictCache(VERDICT_CACHE_SIZE);
+        profiler.setEnabled(prefs.getBoolean(KEY_PROFILER_ENABLED, false));
+        blockingStats = new BlockingStats(
+            context.getSharedPreferences(SITE_STATS_PREFS_NAME, Context.MODE_PRIVATE));
+        filterLists = new FilterListManager(context, prefs);
+        snapshotFile = new File(context.getFilesDir(), SNAPSHOT_FILE);
         
+        // Map the compiled rules from the last run; this parses nothing, so it is
+        // cheap enough for the main thread. Otherwise block nothing until the
+        // background compile below has finished.
+        FilterEngine snapshot = FilterEngine.load(snapshotFile, getSourceFingerprint());
+        engine.set(snapshot != null ? snapshot : new FilterEngine.Builder().build());
+        Log.d(TAG, "AdBlocker initialized with " + getTotalBlockingRules() + " rules"
+            + (snapshot != null ? " from snapshot" : ", compiling"));
+        
+        backgroundExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "AdBlocker-background");
+            thread.setDaemon(true);
+            return thread;
+        });
+        backgroundExecutor.scheduleWithFixedDelay(this::flushStatistics,
+            STATS_FLUSH_INTERVAL_SECONDS, STATS_FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        if (snapshot == null) {
+            backgroundExecutor.execute(this::reloadFilterLists);
+        } else {
+            backgroundExecutor.execute(snapshot.getCosmeticFilters()::getGenericCss);
+        }
+        if (isAdBlockEnabled()) {
+            updateFilterLists(false);
+        }
+    }
+    
+    private static FilterEngine.Builder createBuiltInRules() {
+        FilterEngine.Builder builder = new FilterEngine.Builder();
         try {
-            // Initialize blocked domains
+            // Entries with a path, like facebook.com/tr, become ||host/path filters
             for (String domain : AD_DOMAINS) {
-                blockedDomains.add(domain.toLowerCase());
+                builder.addHost(domain);
             }
             
-            // Initialize blocked patterns
             for (String pattern : AD_PATTERNS) {
-                blockedPatterns.add(Pattern.compile(pattern, Pattern.CASE_INSENSITIVE));
+                builder.addRegex(pattern);
             }
             
-            // Initialize script patterns
+            // Script patterns only apply in stealth mode
             for (String pattern : SCRIPT_PATTERNS) {
-                scriptPatterns.add(Pattern.compile(pattern, Pattern.CASE_INSENSITIVE));
+                builder.addStealthRegex(pattern);
             }
-            
-            Log.d(TAG, "AdBlocker initialized with " + getTotalBlockingRules() + " rules");
         } catch (Exception e) {
             Log.e(TAG, "Error initializing AdBlocker", e);
         }
+        return builder;
+    }
+    
+    private long getSourceFingerprint() {
+        long fingerprint = filterLists.getSourceFingerprint();
+        fingerprint = 31 * fingerprint + Arrays.hashCode(AD_DOMAINS);
+        fingerprint = 31 * fingerprint + Arrays.hashCode(AD_PATTERNS);
+        return 31 * fingerprint + Arrays.hashCode(SCRIPT_PATTERNS);
+    }
+    
+    /**
+     * Compile the built-in rules and all filter lists into a new snapshot,
+     * save it and publish it. Runs on the background thread.
+     */
+    private void reloadFilterLists() {
+        long start = System.currentTimeMillis();
+        long fingerprint = getSourceFingerprint();
+        FilterEngine.Builder builder = createBuiltInRules();
+        int listRules = filterLists.loadInto(builder);
+        FilterEngine compiled = builder.build(fingerprint);
+        try {
+            compiled.save(snapshotFile);
+            // Prefer the mapped file so the rules are not kept on the Java heap
+            FilterEngine mapped = FilterEngine.load(snapshotFile, fingerprint);
+            if (mapped != null) {
+                compiled = mapped;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving rule snapshot", e);
+        }
+        // Build the shared stylesheet here rather than on the first page load
+        compiled.getCosmeticFilters().getGenericCss();
+        engine.set(compiled);
+        verdictCache.clear();
+        Log.d(TAG, "Compiled " + listRules + " filter list rules (" + compiled.getSkippedRuleCount()
+            + " unsupported) in " + (System.currentTimeMillis() - start) + " ms");
+    }
+    
+    /**
+     * Download subscribed filter lists in the background and swap in a new
+     * engine if any of them changed.
+     */
+    public void updateFilterLists(boolean force) {
+        backgroundExecutor.execute(() -> {
+            if ((force || filterLists.isUpdateDue()) && filterLists.updateSubscriptions()) {
+                reloadFilterLists();
+            }
+        });
+    }
+    
+    public long getFilterListsUpdateTime() {
+        return filterLists.getLastUpdateTime();
+    }
+    
+    public boolean isHostsListEnabled() {
+        return filterLists.isHostsListEnabled();
+    }
+    
+    /**
+     * Subscribe to or drop the large hosts-format blocklist.
+     */
+    public void setHostsListEnabled(boolean enabled) {
+        backgroundExecutor.execute(() -> {
+            if (filterLists.setHostsListEnabled(enabled)) {
+                reloadFilterLists();
+            }
+        });
+        if (enabled) {
+            updateFilterLists(true);
+        }
     }
     
     public boolean isAdBlockEnabled() {
@@ -316,6 +488,9 @@ public class AdBlocker {
     
     public void setAdBlockEnabled(boolean enabled) {
         prefs.edit().putBoolean(KEY_ADBLOCK_ENABLED, enabled).apply();
+        if (enabled) {
+            updateFilterLists(false);
+        }
     }
     
     public boolean isStealthModeEnabled() {
@@ -326,7 +501,207 @@ public class AdBlocker {
         prefs.edit().putBoolean(KEY_STEALTH_MODE, enabled).apply();
     }
     
+    /**
+     * Whether top-level documents are loaded by the ad blocker so blocked
+     * scripts and frames can be removed before WebView parses them.
+     */
+    public boolean isHtmlFilteringEnabled() {
+        return prefs.getBoolean(KEY_HTML_FILTERING, false); // Default disabled
+    }
+    
+    public void setHtmlFilteringEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_HTML_FILTERING, enabled).apply();
+    }
+    
+    /**
+     * Record the page a WebView started loading; call from onPageStarted.
+     */
+    public void onPageStarted(WebView view, String url) {
+        pageContexts.update(view, url);
+        blockingStats.onPageStarted(view);
+        injectCosmeticFilters(view, url);
+    }
+    
+    /**
+     * Re-apply element hiding once the new document is showing; scripts run
+     * at onPageStarted can still land in the previous document.
+     */
+    public void onPageCommitVisible(WebView view, String url) {
+        injectCosmeticFilters(view, url);
+    }
+    
+    /**
+     * Add the element hiding stylesheets for a page. The scripts check for
+     * their style element, so running them twice on one document is harmless.
+     * Main thread only.
+     */
+    private void injectCosmeticFilters(WebView view, String url) {
+        if (view == null || url == null || !isAdBlockEnabled()) {
+            return;
+        }
+        String lowerUrl = url.toLowerCase();
+        int hostStart = findHostStart(lowerUrl);
+        if (hostStart < 0 || !(lowerUrl.startsWith("http:") || lowerUrl.startsWith("https:"))) {
+            return;
+        }
+        String host = lowerUrl.substring(hostStart, findHostEnd(lowerUrl, hostStart));
+        FilterEngine current = engine.get();
+        int generation = current.getGeneration();
+        
+        // Keyed by host rather than site, so rules for one subdomain never
+        // reach its siblings
+        StyleScript site = siteStyleScripts.get(host);
+        if (site == null || site.generation != generation) {
+            CosmeticFilterIndex.SiteStyles styles =
+                current.getCosmeticFilters().getSiteStyles(host);
+            site = new StyleScript(generation, styles.css.isEmpty() ? ""
+                : createStyleScript(SITE_STYLE_ID, styles.css), styles.includeGeneric);
+            siteStyleScripts.put(host, site);
+        }
+        if (site.includeGeneric) {
+            StyleScript generic = genericStyleScript;
+            if (generic == null || generic.generation != generation) {
+                String css = current.getCosmeticFilters().getGenericCss();
+                generic = new StyleScript(generation,
+                    css.isEmpty() ? "" : createStyleScript(GENERIC_STYLE_ID, css), true);
+                genericStyleScript = generic;
+            }
+            if (!generic.script.isEmpty()) {
+                view.evaluateJavascript(generic.script, null);
+            }
+        }
+        if (!site.script.isEmpty()) {
+            view.evaluateJavascript(site.script, null);
+        }
+    }
+    
+    private static String createStyleScript(String id, String css) {
+        return "(function(){var d=document;if(d.getElementById('" + id + "'))return;"
+            + "var s=d.createElement('style');s.id='" + id + "';"
+            + "s.textContent='" + escapeJavaScript(css) + "';"
+            + "var p=d.head||d.documentElement;if(p){p.appendChild(s);}else{"
+            + "d.addEventListener('DOMContentLoaded',function(){d.head.appendChild(s);});}})();";
+    }
+    
+    private static String escapeJavaScript(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\': escaped.append("\\\\"); break;
+                case '\'': escaped.append("\\'"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                case '\u2028': escaped.append("\\u2028"); break;
+                case '\u2029': escaped.append("\\u2029"); break;
+                case '<': escaped.append("\\x3c"); break; // no "</script>" in the page
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+    
+    private static final class StyleScript {
+        final int generation;
+        final String script;
+        final boolean includeGeneric;
+        
+        StyleScript(int generation, String script, boolean includeGeneric) {
+            this.generation = generation;
+            this.script = script;
+            this.includeGeneric = includeGeneric;
+        }
+    }
+    
+    /**
+     * Forget a WebView that is being destroyed.
+     */
+    public void onWebViewDestroyed(WebView view) {
+        pageContexts.remove(view);
+        blockingStats.removeTab(view);
+    }
+    
+    /**
+     * Keep a private tab's pages out of the persisted per-site statistics.
+     */
+    public void setPrivateTab(WebView view) {
+        blockingStats.setPrivateTab(view);
+    }
+    
+    /**
+     * Requests blocked on the page a tab is showing, for its badge.
+     */
+    public long getPageBlockedCount(WebView view) {
+        return blockingStats.getPageBlockedCount(view);
+    }
+    
+    public BlockingStats getBlockingStats() {
+        return blockingStats;
+    }
+    
     public WebResourceResponse shouldBlockRequest(WebResourceRequest request) {
+        return shouldBlockRequest(null, request);
+    }
+    
+    /**
+     * Filter the fetches of every page's service workers as well; those never
+     * reach WebViewClient.shouldInterceptRequest. Call once WebView may be
+     * initialized, before the first page loads.
+     */
+    public synchronized void registerServiceWorkerClient() {
+        if (serviceWorkerClientRegistered) {
+            return;
+        }
+        try {
+            ServiceWorkerController.getInstance().setServiceWorkerClient(new ServiceWorkerClient() {
+                @Override
+                public WebResourceResponse shouldInterceptRequest(WebResourceRequest request) {
+                    try {
+                        return shouldBlockServiceWorkerRequest(request);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Error filtering service worker request", e);
+                        return null;
+                    }
+                }
+            });
+            serviceWorkerClientRegistered = true;
+        } catch (RuntimeException e) {
+            // No WebView provider installed or it failed to load
+            Log.e(TAG, "Cannot filter service worker requests", e);
+        }
+    }
+    
+    /**
+     * Check a request made by a service worker. The worker's page is not
+     * known, so party and $domain options cannot apply.
+     */
+    public WebResourceResponse shouldBlockServiceWorkerRequest(WebResourceRequest request) {
+        if (!isAdBlockEnabled() || request == null || request.isForMainFrame()) {
+            return null;
+        }
+        serviceWorkerRequestCount.increment();
+        WebResourceResponse response = shouldBlockRequest(null, request);
+        if (response != null) {
+            serviceWorkerBlockedCount.increment();
+        }
+        return response;
+    }
+    
+    public WebResourceResponse shouldBlockRequest(WebView view, WebResourceRequest request) {
+        if (!profiler.isEnabled()) {
+            return filterRequest(view, request, false);
+        }
+        boolean sampled = profiler.shouldSample();
+        long start = sampled ? System.nanoTime() : 0L;
+        WebResourceResponse response = filterRequest(view, request, sampled);
+        if (sampled) {
+            profiler.recordRequest(System.nanoTime() - start);
+        }
+        return response;
+    }
+    
+    private WebResourceResponse filterRequest(WebView view, WebResourceRequest request,
+                                              boolean timed) {
         if (!isAdBlockEnabled() || request == null || request.getUrl() == null) {
             return null; // Don't block if disabled or invalid request
         }
@@ -336,99 +711,103 @@ public class AdBlocker {
             return null;
         }
         
-        // Check cache first for better performance
-        Boolean cachedResult = urlCache.get(url);
-        if (cachedResult != null) {
-            if (cachedResult) {
-                incrementBlockedCount();
-                return createEmptyResponse();
+        // Top-level navigations are what the user asked for; never block them,
+        // but note the new page before its subresources arrive
+        if (request.isForMainFrame()) {
+            pageContexts.update(view, url);
+            if (isHtmlFilteringEnabled()) {
+                PageContextTracker.PageContext page = pageContexts.get(view);
+                return HtmlDocumentLoader.load(request,
+                    (tagName, src) -> shouldRemoveElement(view, url, page, tagName, src));
             }
             return null;
         }
         
-        boolean shouldBlock = isBlockedInternal(url);
-        
-        // Cache the result (but limit cache size)
-        if (urlCache.size() < 1000) {
-            urlCache.put(url, shouldBlock);
+        String lowerUrl = url.toLowerCase();
+        PageContextTracker.PageContext page = pageContexts.get(view);
+        String site = page != null ? page.registrableDomain : null;
+        int party = getParty(page, lowerUrl);
+        if (party == FilterRequest.PARTY_FIRST) {
+            // Requests to the page's own site are not filtered at all
+            blockingStats.record(view, site, RequestType.OTHER, false);
+            return null;
         }
+        int type = RequestType.classify(request, lowerUrl);
         
-        if (shouldBlock) {
+        boolean blocked = isBlockedOnPage(page, url, lowerUrl, type, party, timed);
+        blockingStats.record(view, site, type, blocked);
+        if (blocked) {
             incrementBlockedCount();
-            return createEmptyResponse();
+            return SurrogateResources.createResponse(lowerUrl, type);
         }
         
         return null; // Don't block
     }
     
-    private boolean isBlockedInternal(String url) {
-        String lowerUrl = url.toLowerCase();
-        String host = null;
-        
-        try {
-            URL urlObj = new URL(url);
-            host = urlObj.getHost();
-            if (host != null) {
-                host = host.toLowerCase();
-            }
-        } catch (Exception e) {
-            // If URL parsing fails, still check patterns
+    /**
+     * Party of a request made by the page: first-party requests are not
+     * filtered, and with no page known it is unknown.
+     */
+    private static int getParty(PageContextTracker.PageContext page, String lowerUrl) {
+        if (page == null) {
+            return FilterRequest.PARTY_UNKNOWN;
         }
-        
-        // Check blocked domains
-        if (host != null) {
-            // Check domain cache first
-            Boolean cachedDomainResult = domainCache.get(host);
-            if (cachedDomainResult != null) {
-                return cachedDomainResult;
-            }
-            
-            boolean domainBlocked = false;
-            for (String domain : blockedDomains) {
-                if (host.contains(domain)) {
-                    domainBlocked = true;
-                    break;
-                }
-            }
-            
-            // Cache domain result
-            if (domainCache.size() < 500) {
-                domainCache.put(host, domainBlocked);
-            }
-            
-            if (domainBlocked) {
-                return true;
-            }
-        }
-        
-        // Check blocked patterns using find() instead of matches() for better performance
-        for (Pattern pattern : blockedPatterns) {
-            if (pattern.matcher(lowerUrl).find()) {
-                return true;
-            }
-        }
-        
-        // Check script patterns for enhanced blocking
-        if (isStealthModeEnabled()) {
-            for (Pattern pattern : scriptPatterns) {
-                if (pattern.matcher(lowerUrl).find()) {
-                    return true;
-                }
-            }
+        int hostStart = findHostStart(lowerUrl);
+        int hostEnd = hostStart < 0 ? -1 : findHostEnd(lowerUrl, hostStart);
+        return page.isFirstParty(lowerUrl, hostStart, hostEnd)
+            ? FilterRequest.PARTY_FIRST : FilterRequest.PARTY_THIRD;
+    }
+    
+    private boolean isBlockedOnPage(PageContextTracker.PageContext page, String url,
+                                    String lowerUrl, int type, int party, boolean timed) {
+        // Check cache first for better performance. Verdicts of $domain= rules
+        // depend on the page's host, so the host is part of the key.
+        boolean stealthMode = isStealthModeEnabled();
+        FilterEngine current = engine.get();
+        long cacheKey = VerdictCache.hashUrl(url) ^ (stealthMode ? STEALTH_KEY_SALT : 0L)
+            ^ (current.getGeneration() * GENERATION_KEY_SALT) ^ (type * TYPE_KEY_SALT)
+            ^ (page != null ? page.hostHash * HOST_KEY_SALT : 0L);
+        int cachedVerdict = verdictCache.get(cacheKey);
+        if (cachedVerdict != VerdictCache.MISS) {
+            return cachedVerdict == VERDICT_BLOCK;
         }
         
-        return false;
+        FilterRequest filterRequest = new FilterRequest(lowerUrl, type,
+            page != null ? page.host : null, party);
+        boolean shouldBlock = current.shouldBlock(filterRequest, stealthMode,
+            profiler.isEnabled() ? profiler : null, timed);
+        verdictCache.put(cacheKey, shouldBlock ? VERDICT_BLOCK : VERDICT_ALLOW);
+        return shouldBlock;
     }
     
-    private WebResourceResponse createEmptyResponse() {
+    /**
+     * Whether a {@code <script src>} or {@code <iframe>} of a document being
+     * filtered by {@link HtmlFilterStream} should be dropped before parsing.
+     */
+    private boolean shouldRemoveElement(WebView view, String documentUrl,
+                                        PageContextTracker.PageContext page,
+                                        String tagName, String src) {
+        String url;
         try {
-            return new WebResourceResponse("text/plain", "utf-8", 
-                new ByteArrayInputStream("".getBytes("UTF-8")));
-        } catch (Exception e) {
-            // Fallback to default encoding
-            return new WebResourceResponse("text/plain", "utf-8", 
-                new ByteArrayInputStream("".getBytes()));
+            url = new URL(new URL(documentUrl), src).toString();
+        } catch (MalformedURLException e) {
+            return false;
+        }
+        String lowerUrl = url.toLowerCase();
+        if (!lowerUrl.startsWith("http:") && !lowerUrl.startsWith("https:")) {
+            return false;
+        }
+        int party = getParty(page, lowerUrl);
+        if (party == FilterRequest.PARTY_FIRST) {
+            return false;
+        }
+        int type = tagName.equals("iframe") ? RequestType.SUBDOCUMENT : RequestType.SCRIPT;
+        if (isBlockedOnPage(page, url, lowerUrl, type, party, false)) {
+            incrementBlockedCount();
+            blockingStats.record(view, page != null ? page.registrableDomain : null, type, true);
+            return true;
         }
+        return false;
     }
     
     public boolean isBlocked(String url) {
@@ -436,44 +815,131 @@ public class AdBlocker {
             return false;
         }
         
-        return isBlockedInternal(url);
+        String lowerUrl = url.toLowerCase();
+        FilterRequest request = new FilterRequest(lowerUrl, RequestType.guessFromUrl(lowerUrl));
+        return engine.get().shouldBlock(request, isStealthModeEnabled());
     }
     
     public int getBlockedCount() {
-        return prefs.getInt("blocked_count", 0);
+        long count = blockedCountBase + sessionBlockedCount.sum();
+        return (int) Math.min(count, Integer.MAX_VALUE);
     }
     
     public void incrementBlockedCount() {
-        synchronized (this) {
+        // Called from WebView's interception threads: no lock and no disk I/O
+        sessionBlockedCount.increment();
+    }
+    
+    /**
+     * Write the live blocked count to preferences if it changed since the last
+     * flush. Runs periodically and when the app is paused or trimmed.
+     */
+    public void flushStatistics() {
+        blockingStats.flush();
+        synchronized (flushLock) {
             int count = getBlockedCount();
-            prefs.edit().putInt("blocked_count", count + 1).apply();
+            if (count == lastPersistedCount) {
+                return;
+            }
+            prefs.edit().putInt(KEY_BLOCKED_COUNT, count).apply();
+            lastPersistedCount = count;
         }
     }
     
     public void resetBlockedCount() {
-        prefs.edit().putInt("blocked_count", 0).apply();
+        synchronized (flushLock) {
+            blockedCountBase = -sessionBlockedCount.sum();
+            prefs.edit().putInt(KEY_BLOCKED_COUNT, 0).apply();
+            lastPersistedCount = 0;
+        }
+        blockingStats.reset();
         // Clear caches when resetting
         clearCache();
     }
     
     public void clearCache() {
-        domainCache.clear();
-        urlCache.clear();
+        verdictCache.clear();
+    }
+    
+    public VerdictCache getVerdictCache() {
+        return verdictCache;
+    }
+    
+    public FilterProfiler getProfiler() {
+        return profiler;
+    }
+    
+    public boolean isProfilerEnabled() {
+        return profiler.isEnabled();
+    }
+    
+    /**
+     * Turn rule hit counting and sampled timing on or off.
+     */
+    public void setProfilerEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_PROFILER_ENABLED, enabled).apply();
+        profiler.setEnabled(enabled);
+    }
+    
+    /**
+     * Index of the first host character in a URL, or -1 if it has no authority.
+     */
+    static int findHostStart(String url) {
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0) {
+            return -1;
+        }
+        int start = schemeEnd + 3;
+        int end = url.length();
+        for (int i = start; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '@') {
+                start = i + 1;
+            } else if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+        }
+        return start;
+    }
+    
+    /**
+     * Index just past the last host character, excluding any port.
+     */
+    static int findHostEnd(String url, int hostStart) {
+        int end = url.length();
+        if (hostStart < end && url.charAt(hostStart) == '[') {
+            // IPv6 literal
+            int close = url.indexOf(']', hostStart);
+            return close < 0 ? end : close + 1;
+        }
+        for (int i = hostStart; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#' || c == ':') {
+                return i;
+            }
+        }
+        return end;
     }
     
     // Check if ad blocker is properly initialized
     public boolean isInitialized() {
-        return blockedDomains != null && 
-               blockedPatterns != null && 
-               scriptPatterns != null &&
-               !blockedDomains.isEmpty() &&
-               !blockedPatterns.isEmpty() &&
-               !scriptPatterns.isEmpty();
+        FilterEngine current = engine.get();
+        return current != null && !current.isEmpty();
     }
     
     // Get total number of blocked domains and patterns
     public int getTotalBlockingRules() {
-        return blockedDomains.size() + blockedPatterns.size() + scriptPatterns.size();
+        return engine.get().getRuleCount();
+    }
+    
+    private static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
     }
     
     // Get statistics
@@ -482,11 +948,27 @@ public class AdBlocker {
             int blockedCount = getBlockedCount();
             boolean isEnabled = isAdBlockEnabled();
             boolean isStealthEnabled = isStealthModeEnabled();
+            FilterEngine current = engine.get();
             
-            return String.format("Ad Blocker: %s\nStealth Mode: %s\nBlocked: %d ads", 
+            return String.format("Ad Blocker: %s\nStealth Mode: %s\nBlocked: %d ads\n" +
+                    "Rules: %d hosts, %d filters, %d exceptions, %d element hiding\n" +
+                    "Host list memory: %s (%s hashes + %s Bloom filter, %s)\n" +
+                    "Service workers: %d blocked of %d requests this session\n" +
+                    "Cache: %d/%d entries, %.1f%% hits (%d hits, %d misses, %d evictions)", 
                 isEnabled ? "ON" : "OFF", 
                 isStealthEnabled ? "ON" : "OFF", 
-                blockedCount);
+                blockedCount,
+                current.getHostCount(), current.getFilterCount(), current.getExceptionCount(),
+                current.getCosmeticRuleCount(),
+                formatSize(current.getHostMemoryUsage()),
+                formatSize(current.getHostMemoryUsage() - current.getHostBloomMemoryUsage()),
+                formatSize(current.getHostBloomMemoryUsage()),
+                current.isMapped() ? "memory-mapped" : "heap",
+                serviceWorkerBlockedCount.sum(), serviceWorkerRequestCount.sum(),
+                verdictCache.size(), verdictCache.getMaximumSize(),
+                verdictCache.getHitRate() * 100,
+                verdictCache.getHitCount(), verdictCache.getMissCount(),
+                verdictCache.getEvictionCount());
         } catch (Exception e) {
             return "Ad Blocker: Error retrieving statistics";
         }
@@ -0,0 +1,245 @@
+package com.example.app.utils;
+
+import android.content.SharedPreferences;
+import android.webkit.WebView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Blocked and allowed request counts per tab and per site, with an estimate
+ * of the bytes blocking saved.
+ *
+ * Interception threads only bump LongAdders found through ConcurrentHashMap
+ * lookups, so they never contend. Tab counts live as long as their WebView.
+ * Site counts, keyed by the registrable domain of the top-level page, are
+ * written to their own preferences file in batches by {@link #flush}, only
+ * for sites that changed, and the least blocked sites are dropped beyond
+ * {@link #MAX_SITES}. Private tabs are counted per tab but leave no sites
+ * behind.
+ */
+public class BlockingStats {
+    private static final int MAX_SITES = 500;
+
+    private final SharedPreferences prefs;
+    private final ConcurrentHashMap<WebView, Counters> tabs = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SiteCounters> sites = new ConcurrentHashMap<>();
+    private final Set<WebView> privateTabs = ConcurrentHashMap.newKeySet();
+    private final Object flushLock = new Object();
+
+    public BlockingStats(SharedPreferences prefs) {
+        this.prefs = prefs;
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            SiteCounters site = SiteCounters.parse(entry.getKey(), String.valueOf(entry.getValue()));
+            if (site != null) {
+                sites.put(site.site, site);
+            }
+        }
+    }
+
+    /**
+     * Typical transfer size of a request of a {@link RequestType}; the basis
+     * of the bytes saved estimate.
+     */
+    static long estimateSize(int type) {
+        switch (type) {
+            case RequestType.SCRIPT:
+                return 30 * 1024;
+            case RequestType.IMAGE:
+                return 15 * 1024;
+            case RequestType.SUBDOCUMENT:
+                return 50 * 1024;
+            case RequestType.STYLESHEET:
+                return 10 * 1024;
+            case RequestType.FONT:
+                return 40 * 1024;
+            case RequestType.MEDIA:
+                return 200 * 1024;
+            case RequestType.XHR:
+                return 2 * 1024;
+            default:
+                return 4 * 1024;
+        }
+    }
+
+    /**
+     * Count a checked subresource request. {@code view} and {@code site}
+     * may be null when the page is not known.
+     */
+    public void record(WebView view, String site, int type, boolean blocked) {
+        long size = blocked ? estimateSize(type) : 0;
+        if (view != null) {
+            Counters tab = tabs.get(view);
+            if (tab == null) {
+                tab = tabs.computeIfAbsent(view, key -> new Counters());
+            }
+            tab.add(blocked, size);
+            if (blocked) {
+                tab.pageBlocked.increment();
+            }
+        }
+        if (site != null && (view == null || !privateTabs.contains(view))) {
+            SiteCounters counters = sites.get(site);
+            if (counters == null) {
+                counters = sites.computeIfAbsent(site, SiteCounters::new);
+            }
+            counters.add(blocked, size);
+        }
+    }
+
+    /**
+     * A tab started loading a new page; its page count starts over.
+     */
+    public void onPageStarted(WebView view) {
+        Counters tab = view != null ? tabs.get(view) : null;
+        if (tab != null) {
+            tab.pageBlocked.reset();
+        }
+    }
+
+    public void setPrivateTab(WebView view) {
+        if (view != null) {
+            privateTabs.add(view);
+        }
+    }
+
+    public void removeTab(WebView view) {
+        if (view != null) {
+            tabs.remove(view);
+            privateTabs.remove(view);
+        }
+    }
+
+    /**
+     * Requests blocked on the page a tab is showing.
+     */
+    public long getPageBlockedCount(WebView view) {
+        Counters tab = view != null ? tabs.get(view) : null;
+        return tab != null ? tab.pageBlocked.sum() : 0;
+    }
+
+    public Counters getTabCounters(WebView view) {
+        return view != null ? tabs.get(view) : null;
+    }
+
+    /**
+     * Sites with the most blocked requests, most first.
+     */
+    public List<SiteCounters> getTopSites(int limit) {
+        List<SiteCounters> all = new ArrayList<>(sites.values());
+        Collections.sort(all, (a, b) -> Long.compare(b.getBlocked(), a.getBlocked()));
+        return all.size() > limit ? new ArrayList<>(all.subList(0, limit)) : all;
+    }
+
+    /**
+     * Write the sites whose counts changed since the last flush, in one
+     * preferences commit.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            SharedPreferences.Editor editor = null;
+            if (sites.size() > MAX_SITES) {
+                editor = prefs.edit();
+                List<SiteCounters> all = getTopSites(Integer.MAX_VALUE);
+                for (SiteCounters site : all.subList(MAX_SITES, all.size())) {
+                    sites.remove(site.site);
+                    editor.remove(site.site);
+                }
+            }
+            for (SiteCounters site : sites.values()) {
+                String value = site.format();
+                if (!value.equals(site.persisted)) {
+                    if (editor == null) {
+                        editor = prefs.edit();
+                    }
+                    editor.putString(site.site, value);
+                    site.persisted = value;
+                }
+            }
+            if (editor != null) {
+                editor.apply();
+            }
+        }
+    }
+
+    public void reset() {
+        synchronized (flushLock) {
+            sites.clear();
+            for (Counters tab : tabs.values()) {
+                tab.reset();
+            }
+            prefs.edit().clear().apply();
+        }
+    }
+
+    public static class Counters {
+        final LongAdder blocked = new LongAdder();
+        final LongAdder allowed = new LongAdder();
+        final LongAdder bytesSaved = new LongAdder();
+        final LongAdder pageBlocked = new LongAdder();
+
+        void add(boolean isBlocked, long size) {
+            if (isBlocked) {
+                blocked.increment();
+                bytesSaved.add(size);
+            } else {
+                allowed.increment();
+            }
+        }
+
+        void reset() {
+            blocked.reset();
+            allowed.reset();
+            bytesSaved.reset();
+            pageBlocked.reset();
+        }
+
+        public long getBlocked() {
+            return blocked.sum();
+        }
+
+        public long getAllowed() {
+            return allowed.sum();
+        }
+
+        public long getBytesSaved() {
+            return bytesSaved.sum();
+        }
+    }
+
+    public static final class SiteCounters extends Counters {
+        public final String site;
+        // Value last written to preferences; flush thread only
+        String persisted;
+
+        SiteCounters(String site) {
+            this.site = site;
+        }
+
+        String format() {
+            return getBlocked() + "," + getAllowed() + "," + getBytesSaved();
+        }
+
+        static SiteCounters parse(String site, String value) {
+            String[] fields = value.split(",");
+            if (fields.length != 3) {
+                return null;
+            }
+            try {
+                SiteCounters counters = new SiteCounters(site);
+                counters.blocked.add(Long.parseLong(fields[0]));
+                counters.allowed.add(Long.parseLong(fields[1]));
+                counters.bytesSaved.add(Long.parseLong(fields[2]));
+                counters.persisted = value;
+                return counters;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.app.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.app.database.DatabaseHelper;
+import com.example.app.models.Bookmark;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Which URLs are bookmarked, held in memory so that checking a page is a
+ * set lookup instead of a query.
+ *
+ * The set holds a 64-bit hash of each bookmarked URL. It is loaded on a
+ * background thread when first used; until then checks go to the
+ * database. Bookmark writes go through here so the set stays in step:
+ * the set changes at once and the database write follows on the same
+ * background thread, in order. Changes made before the set has loaded
+ * are applied to it after loading, so they are not lost to it.
+ */
+public class BookmarkIndex {
+    private static final String TAG = "BookmarkIndex";
+
+    private static BookmarkIndex instance;
+
+    private final DatabaseHelper databaseHelper;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Set<Long> hashes = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded;
+
+    private BookmarkIndex(Context context) {
+        databaseHelper = DatabaseHelper.getInstance(context);
+        executor.execute(() -> {
+            try {
+                databaseHelper.forEachBookmarkUrl(url -> hashes.add(hash(url)));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error loading bookmarks", e);
+            }
+            loaded = true;
+        });
+    }
+
+    public static synchronized BookmarkIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new BookmarkIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public boolean isBookmarked(String url) {
+        if (url == null) return false;
+        if (!loaded) {
+            return databaseHelper.isBookmarked(url);
+        }
+        return hashes.contains(hash(url));
+    }
+
+    public void addBookmark(Bookmark bookmark) {
+        String url = bookmark.getUrl();
+        write(() -> hashes.add(hash(url)), () -> databaseHelper.addBookmark(bookmark));
+    }
+
+    public void removeBookmark(Bookmark bookmark) {
+        String url = bookmark.getUrl();
+        long id = bookmark.getId();
+        write(() -> hashes.remove(hash(url)), () -> databaseHelper.deleteBookmark(id));
+    }
+
+    public void removeBookmark(String url) {
+        write(() -> hashes.remove(hash(url)), () -> databaseHelper.deleteBookmarkUrl(url));
+    }
+
+    /**
+     * Save the edited {@code bookmark}, which had {@code oldUrl} before.
+     */
+    public void updateBookmark(Bookmark bookmark, String oldUrl) {
+        String url = bookmark.getUrl();
+        write(() -> {
+            hashes.remove(hash(oldUrl));
+            hashes.add(hash(url));
+        }, () -> databaseHelper.updateBookmark(bookmark));
+    }
+
+    /**
+     * Forget every bookmark, after the database has been cleared.
+     */
+    public void clear() {
+        write(hashes::clear, () -> {});
+    }
+
+    private void write(Runnable update, Runnable databaseWrite) {
+        boolean updated = loaded;
+        if (updated) {
+            update.run();
+        }
+        executor.execute(() -> {
+            try {
+                databaseWrite.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error writing bookmark", e);
+            }
+            // Queued behind the load, so the set is complete by now
+            if (!updated) {
+                update.run();
+            }
+        });
+    }
+
+    // 64-bit FNV-1a; a collision would only misreport one page
+    private static long hash(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
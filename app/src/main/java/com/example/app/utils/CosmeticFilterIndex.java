@@ -0,0 +1,239 @@
+package com.example.app.utils;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Element hiding rules ({@code ##selector}, {@code domain##selector} and
+ * {@code domain#@#selector}) turned into stylesheets.
+ *
+ * Site-specific rules are stored as sorted host hashes, the same reversed
+ * hashes {@link HostHashSet} uses, with a parallel array of selector ids in
+ * the {@link RulePool}; exceptions store the complement of their id. A page
+ * looks up its host and each parent domain with a binary search. Generic
+ * rules apply everywhere and their stylesheet is built once per engine.
+ */
+public class CosmeticFilterIndex {
+    // Selectors per CSS rule; one invalid selector voids its whole rule
+    private static final int SELECTORS_PER_RULE = 20;
+    private static final String HIDE = "{display:none!important}\n";
+
+    private final LongBuffer hostHashes;
+    private final IntBuffer selectorIds;
+    private final IntBuffer genericIds;
+    private final RulePool rules;
+    private volatile String genericCss;
+
+    CosmeticFilterIndex(LongBuffer hostHashes, IntBuffer selectorIds, IntBuffer genericIds,
+                        RulePool rules) {
+        this.hostHashes = hostHashes;
+        this.selectorIds = selectorIds;
+        this.genericIds = genericIds;
+        this.rules = rules;
+    }
+
+    /**
+     * Stylesheet of the generic rules, shared by every site without
+     * exceptions for them.
+     */
+    public String getGenericCss() {
+        String css = genericCss;
+        if (css == null) {
+            List<String> selectors = new ArrayList<>(genericIds.limit());
+            for (int i = 0; i < genericIds.limit(); i++) {
+                selectors.add(rules.getSource(genericIds.get(i)));
+            }
+            css = toCss(selectors);
+            genericCss = css;
+        }
+        return css;
+    }
+
+    /**
+     * Resolve the rules for a lower-case host and its parent domains.
+     */
+    public SiteStyles getSiteStyles(String host) {
+        Set<String> hidden = new LinkedHashSet<>();
+        Set<String> unhidden = new HashSet<>();
+        int start = 0;
+        while (start >= 0 && start < host.length()) {
+            collect(HostHashSet.hashHost(host.substring(start)), hidden, unhidden);
+            int dot = host.indexOf('.', start);
+            start = dot < 0 ? -1 : dot + 1;
+        }
+        if (hidden.isEmpty() && unhidden.isEmpty()) {
+            return SiteStyles.GENERIC_ONLY;
+        }
+        hidden.removeAll(unhidden);
+
+        boolean overridesGeneric = false;
+        if (!unhidden.isEmpty()) {
+            for (int i = 0; i < genericIds.limit() && !overridesGeneric; i++) {
+                overridesGeneric = unhidden.contains(rules.getSource(genericIds.get(i)));
+            }
+        }
+        if (!overridesGeneric) {
+            return new SiteStyles(toCss(hidden), true);
+        }
+        // Exceptions for generic rules: this site gets its own full stylesheet
+        List<String> selectors = new ArrayList<>();
+        for (int i = 0; i < genericIds.limit(); i++) {
+            String selector = rules.getSource(genericIds.get(i));
+            if (!unhidden.contains(selector)) {
+                selectors.add(selector);
+            }
+        }
+        for (String selector : hidden) {
+            selectors.add(selector);
+        }
+        return new SiteStyles(toCss(selectors), false);
+    }
+
+    private void collect(long hash, Set<String> hidden, Set<String> unhidden) {
+        int low = 0;
+        int high = hostHashes.limit();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (hostHashes.get(mid) < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < hostHashes.limit() && hostHashes.get(i) == hash; i++) {
+            int id = selectorIds.get(i);
+            if (id >= 0) {
+                hidden.add(rules.getSource(id));
+            } else {
+                unhidden.add(rules.getSource(~id));
+            }
+        }
+    }
+
+    private static String toCss(Iterable<String> selectors) {
+        StringBuilder css = new StringBuilder();
+        int inRule = 0;
+        for (String selector : selectors) {
+            if (inRule > 0) {
+                css.append(',');
+            }
+            css.append(selector);
+            if (++inRule == SELECTORS_PER_RULE) {
+                css.append(HIDE);
+                inRule = 0;
+            }
+        }
+        if (inRule > 0) {
+            css.append(HIDE);
+        }
+        return css.toString();
+    }
+
+    public int getGenericCount() {
+        return genericIds.limit();
+    }
+
+    public int getSiteRuleCount() {
+        return hostHashes.limit();
+    }
+
+    /**
+     * Whether a selector can be applied as plain CSS. Procedural selectors
+     * ({@code :has-text()}, {@code :-abp-contains()}, ...), style injection
+     * and HTML filters need a script engine and are skipped.
+     */
+    static boolean isSupportedSelector(String selector) {
+        if (selector.isEmpty() || selector.charAt(0) == '^' || selector.startsWith("+js(")
+                || selector.indexOf('{') >= 0 || selector.indexOf('}') >= 0) {
+            return false;
+        }
+        return !selector.contains(":-abp-") && !selector.contains(":has-text(")
+                && !selector.contains(":xpath(") && !selector.contains(":style(")
+                && !selector.contains(":remove(") && !selector.contains(":matches-css")
+                && !selector.contains(":upward(") && !selector.contains(":min-text-length(");
+    }
+
+    /**
+     * Rules resolved for one site.
+     */
+    public static final class SiteStyles {
+        static final SiteStyles GENERIC_ONLY = new SiteStyles("", true);
+
+        /** CSS for the site; may be empty. */
+        public final String css;
+        /** Whether the generic stylesheet applies as well. */
+        public final boolean includeGeneric;
+
+        SiteStyles(String css, boolean includeGeneric) {
+            this.css = css;
+            this.includeGeneric = includeGeneric;
+        }
+    }
+
+    public static class Builder {
+        private final Set<Integer> generic = new LinkedHashSet<>();
+        private final Set<Integer> genericExceptions = new HashSet<>();
+        private long[] hashes = new long[256];
+        private int[] ids = new int[256];
+        private int count;
+
+        void addGeneric(int selectorId) {
+            generic.add(selectorId);
+        }
+
+        /**
+         * A {@code #@#selector} rule without domains disables the generic
+         * rule for the selector everywhere.
+         */
+        void addGenericException(int selectorId) {
+            genericExceptions.add(selectorId);
+        }
+
+        void addSite(String domain, int selectorId, boolean exception) {
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, count * 2);
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            hashes[count] = HostHashSet.hashHost(domain);
+            ids[count] = exception ? ~selectorId : selectorId;
+            count++;
+        }
+
+        int[] buildGeneric() {
+            int[] result = new int[generic.size()];
+            int size = 0;
+            for (int id : generic) {
+                if (!genericExceptions.contains(id)) {
+                    result[size++] = id;
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        /**
+         * Sort the site rules by host hash; returns the hashes and leaves the
+         * parallel selector ids in {@code siteIds[0]}.
+         */
+        long[] buildSites(int[][] siteIds) {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+            long[] sortedHashes = new long[count];
+            int[] sortedIds = new int[count];
+            for (int i = 0; i < count; i++) {
+                sortedHashes[i] = hashes[order[i]];
+                sortedIds[i] = ids[order[i]];
+            }
+            siteIds[0] = sortedIds;
+            return sortedHashes;
+        }
+    }
+}
@@ -150,11 +150,6 @@ public class DatabaseOptimizer {
         
         dbHandler.post(() -> {
             try {
-                // Create index on history table
-                db.execSQL("CREATE INDEX IF NOT EXISTS idx_history_url ON history(url)");
-                db.execSQL("CREATE INDEX IF NOT EXISTS idx_history_title ON history(title)");
-                db.execSQL("CREATE INDEX IF NOT EXISTS idx_history_timestamp ON history(timestamp)");
-                
                 // Create index on bookmarks table
                 db.execSQL("CREATE INDEX IF NOT EXISTS idx_bookmarks_url ON bookmarks(url)");
                 db.execSQL("CREATE INDEX IF NOT EXISTS idx_bookmarks_title ON bookmarks(title)");
@@ -205,7 +200,7 @@ public class DatabaseOptimizer {
                 stats.databaseSize = (long) stats.pageCount * stats.pageSize;
                 
                 // Get table counts
-                cursor = db.rawQuery("SELECT COUNT(*) FROM history", null);
+                cursor = db.rawQuery("SELECT COUNT(*) FROM visits", null);
                 if (cursor.moveToFirst()) {
                     stats.historyCount = cursor.getInt(0);
                 }
@@ -0,0 +1,220 @@
+package com.example.app.utils;
+
+import java.util.List;
+
+/**
+ * Reverse-label suffix trie for host matching.
+ *
+ * Domains are stored label by label starting from the TLD, so "ads.example.com"
+ * becomes com -> example -> ads. A lookup walks the host from its last label
+ * towards the first and stops at the first terminal node, which makes it
+ * O(labels) and respects label boundaries: "example.com" matches
+ * "ads.example.com" but never "badexample.com".
+ *
+ * Lookups do not allocate. Children are kept in a small open-addressing table
+ * hashed over the label characters, and labels are compared in place with
+ * {@link String#regionMatches}. Hosts are expected in lower case.
+ */
+public class DomainSuffixTrie {
+    private static final int INITIAL_CHILD_CAPACITY = 4;
+
+    private final Node root = new Node();
+    private int size;
+
+    /**
+     * Add a domain; any host equal to it or below it will match.
+     * Returns false if the value is not a plain host name.
+     */
+    public boolean add(String domain) {
+        if (domain == null) {
+            return false;
+        }
+        String host = domain.trim().toLowerCase();
+        while (host.startsWith(".")) {
+            host = host.substring(1);
+        }
+        while (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        if (host.isEmpty() || host.indexOf('/') >= 0 || host.indexOf(':') >= 0
+                || host.indexOf(' ') >= 0 || host.contains("..")) {
+            return false;
+        }
+
+        Node node = root;
+        int end = host.length();
+        while (end > 0) {
+            int dot = host.lastIndexOf('.', end - 1);
+            int start = dot + 1;
+            if (node.terminal) {
+                // A parent domain already covers everything below it
+                return false;
+            }
+            Node child = node.find(host, start, end);
+            if (child == null) {
+                child = node.insert(host.substring(start, end));
+            }
+            node = child;
+            end = dot;
+        }
+        if (node.terminal) {
+            return false;
+        }
+        node.terminal = true;
+        size++;
+        return true;
+    }
+
+    /**
+     * Check whether the host, or one of its parent domains, was added.
+     */
+    public boolean matches(String host) {
+        if (host == null) {
+            return false;
+        }
+        return matches(host, 0, host.length());
+    }
+
+    /**
+     * Check the host found at {@code [start, end)} of {@code text}, e.g. the
+     * authority part of a URL, without extracting it first.
+     */
+    public boolean matches(CharSequence text, int start, int end) {
+        if (text == null || start >= end) {
+            return false;
+        }
+        Node node = root;
+        int labelEnd = end;
+        while (labelEnd > start) {
+            int dot = labelEnd - 1;
+            while (dot >= start && text.charAt(dot) != '.') {
+                dot--;
+            }
+            node = node.find(text, dot + 1, labelEnd);
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+            labelEnd = dot;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Append every stored domain to the list. Domains covered by a parent
+     * domain were never stored, so the result has no redundant entries.
+     */
+    public void collect(List<String> out) {
+        collect(root, "", out);
+    }
+
+    private static void collect(Node node, String suffix, List<String> out) {
+        if (node.terminal) {
+            out.add(suffix);
+            return;
+        }
+        if (node.labels == null) {
+            return;
+        }
+        for (int i = 0; i < node.labels.length; i++) {
+            String label = node.labels[i];
+            if (label != null) {
+                collect(node.children[i], suffix.isEmpty() ? label : label + "." + suffix, out);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    static int hashLabel(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean labelEquals(String label, CharSequence text, int start, int end) {
+        int length = end - start;
+        if (label.length() != length) {
+            return false;
+        }
+        if (text instanceof String) {
+            return ((String) text).regionMatches(start, label, 0, length);
+        }
+        for (int i = 0; i < length; i++) {
+            if (label.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Node {
+        String[] labels;
+        Node[] children;
+        int childCount;
+        boolean terminal;
+
+        Node find(CharSequence text, int start, int end) {
+            if (labels == null) {
+                return null;
+            }
+            int mask = labels.length - 1;
+            int slot = hashLabel(text, start, end) & mask;
+            while (true) {
+                String label = labels[slot];
+                if (label == null) {
+                    return null;
+                }
+                if (labelEquals(label, text, start, end)) {
+                    return children[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        Node insert(String label) {
+            if (labels == null) {
+                labels = new String[INITIAL_CHILD_CAPACITY];
+                children = new Node[INITIAL_CHILD_CAPACITY];
+            } else if ((childCount + 1) * 4 > labels.length * 3) {
+                resize();
+            }
+            Node child = new Node();
+            put(label, child);
+            childCount++;
+            return child;
+        }
+
+        private void put(String label, Node child) {
+            int mask = labels.length - 1;
+            int slot = hashLabel(label, 0, label.length()) & mask;
+            while (labels[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            labels[slot] = label;
+            children[slot] = child;
+        }
+
+        private void resize() {
+            String[] oldLabels = labels;
+            Node[] oldChildren = children;
+            labels = new String[oldLabels.length * 2];
+            children = new Node[oldLabels.length * 2];
+            for (int i = 0; i < oldLabels.length; i++) {
+                if (oldLabels[i] != null) {
+                    put(oldLabels[i], oldChildren[i]);
+                }
+            }
+        }
+    }
+}
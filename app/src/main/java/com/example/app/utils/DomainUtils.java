@@ -0,0 +1,87 @@
+package com.example.app.utils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Host helpers for telling first-party from third-party requests.
+ *
+ * The registrable domain ("eTLD+1") is approximated as the last two labels
+ * of a host, or the last three under a known multi-part public suffix such
+ * as co.uk. This is not the full Public Suffix List but covers the suffixes
+ * that matter for telling sites apart on the common web.
+ */
+public final class DomainUtils {
+    private static final Set<String> MULTI_PART_SUFFIXES = new HashSet<>(Arrays.asList(
+        "co.uk", "org.uk", "ac.uk", "gov.uk", "me.uk", "net.uk",
+        "com.au", "net.au", "org.au", "edu.au", "gov.au",
+        "co.jp", "ne.jp", "or.jp", "ac.jp", "go.jp",
+        "co.nz", "org.nz", "co.za", "co.in", "net.in", "org.in", "co.kr", "or.kr",
+        "com.br", "net.br", "org.br", "com.cn", "net.cn", "org.cn", "gov.cn",
+        "com.mx", "com.ar", "com.tr", "com.tw", "com.hk", "com.sg", "com.my",
+        "com.ph", "com.vn", "com.ua", "com.pl", "co.id", "co.il", "co.th",
+        "github.io", "gitlab.io", "blogspot.com", "appspot.com", "herokuapp.com",
+        "cloudfront.net", "azurewebsites.net", "netlify.app", "vercel.app",
+        "pages.dev", "web.app", "firebaseapp.com"
+    ));
+
+    private DomainUtils() {}
+
+    /**
+     * Registrable domain of a lower-case host, or the host itself for IP
+     * addresses and single-label hosts.
+     */
+    public static String getRegistrableDomain(String host) {
+        if (host == null || host.isEmpty() || isIpAddress(host)) {
+            return host;
+        }
+        int last = host.lastIndexOf('.');
+        if (last <= 0) {
+            return host;
+        }
+        int second = host.lastIndexOf('.', last - 1);
+        if (second < 0) {
+            return host;
+        }
+        if (MULTI_PART_SUFFIXES.contains(host.substring(second + 1))) {
+            int third = host.lastIndexOf('.', second - 1);
+            return host.substring(third + 1);
+        }
+        return host.substring(second + 1);
+    }
+
+    /**
+     * Whether the host at {@code [start, end)} of {@code text} is
+     * {@code domain} or one of its subdomains, checked in place.
+     */
+    public static boolean isSameOrSubdomain(CharSequence text, int start, int end, String domain) {
+        int length = domain.length();
+        int offset = end - length;
+        if (offset < start) {
+            return false;
+        }
+        if (offset > start && text.charAt(offset - 1) != '.') {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(offset + i) != domain.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIpAddress(String host) {
+        if (host.indexOf(':') >= 0 || host.startsWith("[")) {
+            return true;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
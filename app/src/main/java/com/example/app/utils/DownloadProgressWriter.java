@@ -0,0 +1,130 @@
+package com.example.app.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.example.app.database.DatabaseHelper;
+import com.example.app.models.DownloadItem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes download rows on a background thread.
+ *
+ * Progress only replaces the latest value held for the download; every
+ * download that moved is written once per {@link #FLUSH_INTERVAL_MS}, all
+ * in one transaction. A change of status is written straight away, with
+ * whatever progress is waiting. Listeners showing progress read it from
+ * the download itself, never from here.
+ *
+ * Progress may be reported from any thread.
+ */
+public class DownloadProgressWriter {
+    private static final String TAG = "DownloadProgressWriter";
+    private static final long FLUSH_INTERVAL_MS = 1000;
+
+    private static DownloadProgressWriter instance;
+
+    private final DatabaseHelper databaseHelper;
+    private final Handler handler;
+    // Latest unwritten values by download id
+    private final Map<Long, DownloadItem> dirty = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Runnable flushRunnable = this::flush;
+
+    private DownloadProgressWriter(Context context) {
+        databaseHelper = DatabaseHelper.getInstance(context);
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    public static synchronized DownloadProgressWriter getInstance(Context context) {
+        if (instance == null) {
+            instance = new DownloadProgressWriter(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Insert a new download, give it its row id, then run {@code then} on
+     * the writer thread.
+     */
+    public void addDownload(DownloadItem item, Runnable then) {
+        handler.post(() -> {
+            try {
+                item.setId(databaseHelper.addDownloadItem(item));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error adding download", e);
+                return;
+            }
+            then.run();
+        });
+    }
+
+    /**
+     * Note the download's size and progress, to be written with the next
+     * batch.
+     */
+    public void updateProgress(DownloadItem item) {
+        dirty.put(item.getId(), copyOf(item));
+        if (flushScheduled.compareAndSet(false, true)) {
+            handler.postDelayed(flushRunnable, FLUSH_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Write the download's status and progress now.
+     */
+    public void updateStatus(DownloadItem item) {
+        dirty.put(item.getId(), copyOf(item));
+        handler.post(flushRunnable);
+    }
+
+    public void deleteDownload(long id) {
+        dirty.remove(id);
+        handler.post(() -> {
+            try {
+                databaseHelper.deleteDownloadItem(id);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error deleting download", e);
+            }
+        });
+    }
+
+    private void flush() {
+        handler.removeCallbacks(flushRunnable);
+        flushScheduled.set(false);
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<DownloadItem> batch = new ArrayList<>(dirty.size());
+        for (Long id : dirty.keySet()) {
+            DownloadItem item = dirty.remove(id);
+            if (item != null) {
+                batch.add(item);
+            }
+        }
+        try {
+            databaseHelper.updateDownloads(batch);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error writing download progress", e);
+        }
+    }
+
+    // The download thread keeps changing the item, so keep the values as of now
+    private static DownloadItem copyOf(DownloadItem item) {
+        DownloadItem copy = new DownloadItem();
+        copy.setId(item.getId());
+        copy.setFileSize(item.getFileSize());
+        copy.setDownloadedSize(item.getDownloadedSize());
+        copy.setStatus(item.getStatus());
+        return copy;
+    }
+}
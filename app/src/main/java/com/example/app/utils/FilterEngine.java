@@ -0,0 +1,573 @@
+package com.example.app.utils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The compiled rule set: blocked hosts, network filters, exception filters,
+ * the stealth-only script filters and element hiding rules.
+ *
+ * An engine is a view over one binary snapshot, so the same data can be
+ * built in memory or memory-mapped from a file with {@link #load} without
+ * parsing a single rule. Layout, big-endian:
+ * <pre>
+ *   header     magic, version, source fingerprint (long), host count,
+ *              rule count, string pool length, skipped rule count,
+ *              Bloom filter word count, filter, exception and stealth
+ *              filter counts, site and generic element hiding rule counts
+ *   hosts      sorted long host hashes, see {@link HostHashSet}
+ *   bloom      long words of the host Bloom filter
+ *   sites      sorted long host hashes of element hiding rules
+ *   records    two ints per rule, see {@link RulePool}
+ *   selectors  rule ids parallel to sites, then the generic rule ids, see
+ *              {@link CosmeticFilterIndex}
+ *   strings    UTF-8 rule text and selectors, padded to 4 bytes
+ *   indexes    filters, exceptions and stealth filters, each partitioned by
+ *              request type, see {@link TypedFilterIndex}
+ * </pre>
+ *
+ * An engine is immutable. {@link AdBlocker} swaps whole engines when filter
+ * lists change, so a request is always checked against one complete rule set
+ * without taking a lock.
+ */
+public class FilterEngine {
+    private static final int MAGIC = 0x41425253; // "ABRS"
+    // Bump when the layout or the meaning of any rule changes
+    private static final int SNAPSHOT_VERSION = 4;
+    private static final int HEADER_SIZE = 56;
+
+    private static final AtomicInteger nextGeneration = new AtomicInteger();
+
+    private final ByteBuffer snapshot;
+    private final long fingerprint;
+    private final HostHashSet blockedHosts;
+    private final RulePool rules;
+    private final TypedFilterIndex filters;
+    private final TypedFilterIndex exceptions;
+    private final TypedFilterIndex stealthFilters;
+    private final CosmeticFilterIndex cosmeticFilters;
+    private final int skippedRules;
+    private final int generation;
+
+    private FilterEngine(ByteBuffer snapshot) throws IOException {
+        try {
+            if (snapshot.getInt(0) != MAGIC || snapshot.getInt(4) != SNAPSHOT_VERSION) {
+                throw new IOException("Not a rule snapshot of version " + SNAPSHOT_VERSION);
+            }
+            this.snapshot = snapshot;
+            this.fingerprint = snapshot.getLong(8);
+            int hostCount = snapshot.getInt(16);
+            int ruleCount = snapshot.getInt(20);
+            int poolLength = snapshot.getInt(24);
+            this.skippedRules = snapshot.getInt(28);
+            int bloomWords = snapshot.getInt(32);
+            int filterCount = snapshot.getInt(36);
+            int exceptionCount = snapshot.getInt(40);
+            int stealthCount = snapshot.getInt(44);
+            int siteSelectorCount = snapshot.getInt(48);
+            int genericSelectorCount = snapshot.getInt(52);
+
+            int offset = HEADER_SIZE;
+            LongBuffer hostHashes = slice(offset, hostCount * 8).asLongBuffer();
+            offset += hostCount * 8;
+            blockedHosts = new HostHashSet(hostHashes, slice(offset, bloomWords * 8).asLongBuffer());
+            offset += bloomWords * 8;
+            LongBuffer siteHashes = slice(offset, siteSelectorCount * 8).asLongBuffer();
+            offset += siteSelectorCount * 8;
+            IntBuffer records = slice(offset, ruleCount * 8).asIntBuffer();
+            offset += ruleCount * 8;
+            IntBuffer siteIds = slice(offset, siteSelectorCount * 4).asIntBuffer();
+            offset += siteSelectorCount * 4;
+            IntBuffer genericIds = slice(offset, genericSelectorCount * 4).asIntBuffer();
+            offset += genericSelectorCount * 4;
+            rules = new RulePool(records, slice(offset, poolLength));
+            cosmeticFilters = new CosmeticFilterIndex(siteHashes, siteIds, genericIds, rules);
+            offset += align(poolLength);
+
+            IntBuffer indexes = slice(offset, snapshot.capacity() - offset).asIntBuffer();
+            int[] end = {0};
+            filters = TypedFilterIndex.read(indexes, end[0], filterCount, rules, end);
+            exceptions = TypedFilterIndex.read(indexes, end[0], exceptionCount, rules, end);
+            stealthFilters = TypedFilterIndex.read(indexes, end[0], stealthCount, rules, end);
+            if (end[0] != indexes.limit()) {
+                throw new IOException("Truncated rule snapshot");
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException | BufferUnderflowException e) {
+            throw new IOException("Corrupt rule snapshot", e);
+        }
+        this.generation = nextGeneration.incrementAndGet();
+    }
+
+    /**
+     * Map a snapshot file. Returns null if it is missing, unreadable, of
+     * another version or was compiled from different sources.
+     */
+    public static FilterEngine load(File file, long expectedFingerprint) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.capacity() < HEADER_SIZE || mapped.getLong(8) != expectedFingerprint) {
+                return null;
+            }
+            return new FilterEngine(mapped);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the snapshot to a file, replacing it atomically.
+     */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temp)) {
+            FileChannel channel = output.getChannel();
+            ByteBuffer data = snapshot.duplicate();
+            data.rewind();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            output.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + file.getName());
+        }
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer view = snapshot.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return view.slice();
+    }
+
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+
+    public boolean shouldBlock(FilterRequest request, boolean stealthMode) {
+        return shouldBlock(request, stealthMode, null, false);
+    }
+
+    /**
+     * Check a request, counting the blocking rule and any exception that
+     * overrides it in {@code profiler}, and timing every rule evaluated if
+     * {@code timed}.
+     */
+    public boolean shouldBlock(FilterRequest request, boolean stealthMode,
+                               FilterProfiler profiler, boolean timed) {
+        FilterProfiler timer = timed ? profiler : null;
+        String rule;
+        if (request.hasHost()
+                && blockedHosts.matches(request.url, request.hostStart, request.hostEnd)) {
+            rule = FilterProfiler.HOST_LIST_RULE;
+        } else {
+            NetworkFilter filter = filters.findMatch(request, timer);
+            if (filter == null && stealthMode) {
+                filter = stealthFilters.findMatch(request, timer);
+            }
+            if (filter == null) {
+                return false;
+            }
+            rule = filter.getSource();
+        }
+        NetworkFilter exception = exceptions.findMatch(request, timer);
+        if (profiler != null) {
+            profiler.recordHit(rule);
+            if (exception != null) {
+                profiler.recordHit(exception.getSource());
+            }
+        }
+        return exception == null;
+    }
+
+    public CosmeticFilterIndex getCosmeticFilters() {
+        return cosmeticFilters;
+    }
+
+    /**
+     * Distinct for every engine loaded, so verdicts cached by an older engine
+     * can be told apart.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getRuleCount() {
+        return blockedHosts.size() + rules.size();
+    }
+
+    public int getHostCount() {
+        return blockedHosts.size();
+    }
+
+    public int getFilterCount() {
+        return filters.size() + stealthFilters.size();
+    }
+
+    public int getExceptionCount() {
+        return exceptions.size();
+    }
+
+    public int getCosmeticRuleCount() {
+        return cosmeticFilters.getGenericCount() + cosmeticFilters.getSiteRuleCount();
+    }
+
+    public int getSkippedRuleCount() {
+        return skippedRules;
+    }
+
+    public int getSnapshotSize() {
+        return snapshot.capacity();
+    }
+
+    /**
+     * Whether the rules are memory-mapped from a file rather than held on the
+     * Java heap.
+     */
+    public boolean isMapped() {
+        return snapshot.isDirect();
+    }
+
+    public long getHostMemoryUsage() {
+        return blockedHosts.getMemoryUsage();
+    }
+
+    public long getHostBloomMemoryUsage() {
+        return blockedHosts.getBloomMemoryUsage();
+    }
+
+    public boolean isEmpty() {
+        return blockedHosts.isEmpty() && filters.isEmpty() && stealthFilters.isEmpty();
+    }
+
+    public static class Builder {
+        private final DomainSuffixTrie blockedHosts = new DomainSuffixTrie();
+        private final TypedFilterIndex.Builder filters = new TypedFilterIndex.Builder();
+        private final TypedFilterIndex.Builder exceptions = new TypedFilterIndex.Builder();
+        private final TypedFilterIndex.Builder stealthFilters = new TypedFilterIndex.Builder();
+        private final CosmeticFilterIndex.Builder cosmeticFilters = new CosmeticFilterIndex.Builder();
+        private final List<String> ruleSources = new ArrayList<>();
+        private final List<Integer> ruleKinds = new ArrayList<>();
+        // Selectors repeat across sites; each is stored once
+        private final Map<String, Integer> selectorIds = new HashMap<>();
+        // Hashes of hosts from hosts files, kept flat so million-entry lists stay small
+        private long[] listedHosts = new long[1024];
+        private int listedHostCount;
+        private int skippedRules;
+
+        /**
+         * Block a host and its subdomains. Entries that carry a path, such as
+         * {@code facebook.com/tr}, become {@code ||host/path} filters.
+         */
+        public Builder addHost(String host) {
+            if (host.indexOf('/') >= 0) {
+                addFilterLine("||" + host);
+            } else {
+                blockedHosts.add(host);
+            }
+            return this;
+        }
+
+        public Builder addRegex(String regex) {
+            filters.add(NetworkFilter.fromRegex(regex), addRule(regex, RulePool.KIND_REGEX));
+            return this;
+        }
+
+        /**
+         * Add a regex that blocks scripts in stealth mode only.
+         */
+        public Builder addStealthRegex(String regex) {
+            stealthFilters.add(NetworkFilter.fromRegex(regex, RequestType.SCRIPT),
+                    addRule(regex, RulePool.KIND_SCRIPT_REGEX));
+            return this;
+        }
+
+        /**
+         * Add one line of an Adblock Plus filter list. Returns false if the
+         * line is a comment or a rule that is not supported.
+         */
+        public boolean addFilterLine(String line) {
+            int separator = line.indexOf('#');
+            if (separator >= 0 && (line.startsWith("##", separator)
+                    || line.startsWith("#@#", separator))) {
+                return addElementHidingRule(line.trim());
+            }
+            NetworkFilter filter = NetworkFilter.parse(line);
+            if (filter == null) {
+                String rule = line.trim();
+                if (!rule.isEmpty() && rule.charAt(0) != '!' && rule.charAt(0) != '[') {
+                    skippedRules++;
+                }
+                return false;
+            }
+            if (filter.isException()) {
+                exceptions.add(filter, addRule(filter.getSource(), RulePool.KIND_FILTER));
+                return true;
+            }
+            String host = filter.getBlockedHost();
+            if (host != null) {
+                blockedHosts.add(host);
+                return true;
+            }
+            filters.add(filter, addRule(filter.getSource(), RulePool.KIND_FILTER));
+            return true;
+        }
+
+        private boolean addElementHidingRule(String rule) {
+            int separator = rule.indexOf('#');
+            if (rule.startsWith("!")) {
+                return false;
+            }
+            boolean exception = rule.startsWith("#@#", separator);
+            String selector = rule.substring(separator + (exception ? 3 : 2)).trim();
+            if (!CosmeticFilterIndex.isSupportedSelector(selector)) {
+                skippedRules++;
+                return false;
+            }
+            Integer id = selectorIds.get(selector);
+            if (id == null) {
+                id = addRule(selector, RulePool.KIND_SELECTOR);
+                selectorIds.put(selector, id);
+            }
+            if (separator == 0) {
+                if (exception) {
+                    cosmeticFilters.addGenericException(id);
+                } else {
+                    cosmeticFilters.addGeneric(id);
+                }
+                return true;
+            }
+            boolean included = false;
+            boolean negatedOnly = true;
+            for (String entry : rule.substring(0, separator).toLowerCase().split(",")) {
+                String domain = entry.trim();
+                boolean negated = domain.startsWith("~");
+                if (negated) {
+                    domain = domain.substring(1);
+                } else {
+                    negatedOnly = false;
+                }
+                // Entity domains like "example.*" cannot be hashed
+                if (domain.isEmpty() || domain.indexOf('*') >= 0) {
+                    continue;
+                }
+                if (!negated) {
+                    cosmeticFilters.addSite(domain, id, exception);
+                    included = true;
+                } else if (!exception) {
+                    cosmeticFilters.addSite(domain, id, true);
+                }
+            }
+            // "~example.com##.ad" hides everywhere but the negated domains
+            if (negatedOnly && !exception) {
+                cosmeticFilters.addGeneric(id);
+                return true;
+            }
+            if (!included) {
+                skippedRules++;
+            }
+            return included;
+        }
+
+        /**
+         * Add every line of a filter list; returns the number of rules added.
+         */
+        public int addFilterList(Reader reader) throws IOException {
+            BufferedReader lines = new BufferedReader(reader);
+            int added = 0;
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (addFilterLine(line)) {
+                    added++;
+                }
+            }
+            return added;
+        }
+
+        /**
+         * Add every host of a hosts-format list ({@code 0.0.0.0 host} lines,
+         * or one bare host per line). Returns the number of hosts added.
+         */
+        public int addHostsFile(Reader reader) throws IOException {
+            BufferedReader lines = new BufferedReader(reader);
+            int added = 0;
+            String line;
+            while ((line = lines.readLine()) != null) {
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                String[] fields = line.trim().split("\\s+");
+                if (fields[0].isEmpty()) {
+                    continue;
+                }
+                // "ip host [host...]" lines; domain-only lists have no address
+                int first = isAddress(fields[0]) ? 1 : 0;
+                for (int i = first; i < fields.length; i++) {
+                    if (addListedHost(fields[i])) {
+                        added++;
+                    }
+                }
+            }
+            return added;
+        }
+
+        private boolean addListedHost(String entry) {
+            String host = entry.toLowerCase();
+            if (host.endsWith(".")) {
+                host = host.substring(0, host.length() - 1);
+            }
+            // Entries need a dot: "localhost" and friends must never block a parent domain
+            if (host.indexOf('.') <= 0 || host.equals("localhost.localdomain")
+                    || isAddress(host)) {
+                return false;
+            }
+            for (int i = 0; i < host.length(); i++) {
+                char c = host.charAt(i);
+                if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                        || c == '-' || c == '.' || c == '_')) {
+                    return false;
+                }
+            }
+            if (listedHostCount == listedHosts.length) {
+                listedHosts = Arrays.copyOf(listedHosts, listedHosts.length * 2);
+            }
+            listedHosts[listedHostCount++] = HostHashSet.hashHost(host);
+            return true;
+        }
+
+        private static boolean isAddress(String field) {
+            if (field.indexOf(':') >= 0) {
+                return true; // IPv6
+            }
+            for (int i = 0; i < field.length(); i++) {
+                char c = field.charAt(i);
+                if (c != '.' && (c < '0' || c > '9')) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int addRule(String source, int kind) {
+            ruleSources.add(source);
+            ruleKinds.add(kind);
+            return ruleSources.size() - 1;
+        }
+
+        public FilterEngine build() {
+            return build(0L);
+        }
+
+        /**
+         * Compile everything added so far into a snapshot tagged with the
+         * fingerprint of its sources.
+         */
+        public FilterEngine build(long fingerprint) {
+            List<String> hosts = new ArrayList<>(blockedHosts.size());
+            blockedHosts.collect(hosts);
+            long[] hostHashes = Arrays.copyOf(listedHosts, listedHostCount + hosts.size());
+            for (int i = 0; i < hosts.size(); i++) {
+                hostHashes[listedHostCount + i] = HostHashSet.hashHost(hosts.get(i));
+            }
+            int hostCount = HostHashSet.sortUnique(hostHashes, hostHashes.length);
+            long[] bloom = HostHashSet.buildBloom(hostHashes, hostCount);
+
+            ByteArrayOutputStream pool = new ByteArrayOutputStream();
+            int[] records = new int[ruleSources.size() * 2];
+            for (int i = 0; i < ruleSources.size(); i++) {
+                byte[] bytes = ruleSources.get(i).getBytes(StandardCharsets.UTF_8);
+                records[i * 2] = pool.size();
+                records[i * 2 + 1] = (bytes.length << RulePool.KIND_BITS) | ruleKinds.get(i);
+                pool.write(bytes, 0, bytes.length);
+            }
+            byte[] strings = pool.toByteArray();
+            int[] genericSelectors = cosmeticFilters.buildGeneric();
+            int[][] siteSelectors = new int[1][];
+            long[] siteHashes = cosmeticFilters.buildSites(siteSelectors);
+
+            List<int[]> indexes = new ArrayList<>();
+            for (TypedFilterIndex.Builder index : new TypedFilterIndex.Builder[] {
+                    filters, exceptions, stealthFilters}) {
+                indexes.addAll(Arrays.asList(index.build()));
+            }
+            int size = HEADER_SIZE + hostCount * 8 + bloom.length * 8 + siteHashes.length * 12
+                    + records.length * 4 + genericSelectors.length * 4 + align(strings.length);
+            for (int[] index : indexes) {
+                size += index.length * 4;
+            }
+
+            ByteBuffer snapshot = ByteBuffer.allocate(size);
+            snapshot.putInt(MAGIC)
+                    .putInt(SNAPSHOT_VERSION)
+                    .putLong(fingerprint)
+                    .putInt(hostCount)
+                    .putInt(ruleSources.size())
+                    .putInt(strings.length)
+                    .putInt(skippedRules)
+                    .putInt(bloom.length)
+                    .putInt(filters.size())
+                    .putInt(exceptions.size())
+                    .putInt(stealthFilters.size())
+                    .putInt(siteHashes.length)
+                    .putInt(genericSelectors.length);
+            for (int i = 0; i < hostCount; i++) {
+                snapshot.putLong(hostHashes[i]);
+            }
+            for (long word : bloom) {
+                snapshot.putLong(word);
+            }
+            for (long hash : siteHashes) {
+                snapshot.putLong(hash);
+            }
+            for (int record : records) {
+                snapshot.putInt(record);
+            }
+            for (int id : siteSelectors[0]) {
+                snapshot.putInt(id);
+            }
+            for (int id : genericSelectors) {
+                snapshot.putInt(id);
+            }
+            snapshot.put(strings);
+            snapshot.position(snapshot.position() + align(strings.length) - strings.length);
+            for (int[] index : indexes) {
+                for (int value : index) {
+                    snapshot.putInt(value);
+                }
+            }
+            snapshot.rewind();
+            try {
+                return new FilterEngine(snapshot);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
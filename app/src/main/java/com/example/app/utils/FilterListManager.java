@@ -0,0 +1,244 @@
+package com.example.app.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads Adblock Plus / EasyList filter lists and hosts-format blocklists from
+ * the app assets and from downloaded subscriptions, and keeps the
+ * subscriptions up to date.
+ *
+ * Lists bundled with the app go in {@code assets/filters/*.txt} and
+ * {@code assets/hosts/*.txt}. Subscriptions are downloaded into
+ * {@code files/filter_lists/} and {@code files/host_lists/} and replaced
+ * atomically, so a half-written download is never parsed.
+ */
+public class FilterListManager {
+    private static final String TAG = "FilterListManager";
+    private static final String ASSET_DIRECTORY = "filters";
+    private static final String LIST_DIRECTORY = "filter_lists";
+    private static final String HOSTS_ASSET_DIRECTORY = "hosts";
+    private static final String HOSTS_LIST_DIRECTORY = "host_lists";
+    private static final String KEY_LAST_UPDATE = "filter_lists_last_update";
+    private static final String KEY_HOSTS_LIST_ENABLED = "hosts_list_enabled";
+    private static final long UPDATE_INTERVAL_MS = TimeUnit.DAYS.toMillis(4);
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    // File name and URL of each subscription
+    private static final String[][] SUBSCRIPTIONS = {
+        {"easylist.txt", "https://easylist.to/easylist/easylist.txt"},
+        {"easyprivacy.txt", "https://easylist.to/easylist/easyprivacy.txt"}
+    };
+    
+    // Large (100k+ hosts) list, only downloaded when enabled in settings
+    private static final String[][] HOSTS_SUBSCRIPTIONS = {
+        {"stevenblack.txt", "https://raw.githubusercontent.com/StevenBlack/hosts/master/hosts"}
+    };
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final File listDirectory;
+    private final File hostsListDirectory;
+
+    public FilterListManager(Context context, SharedPreferences prefs) {
+        this.context = context;
+        this.prefs = prefs;
+        this.listDirectory = new File(context.getFilesDir(), LIST_DIRECTORY);
+        this.hostsListDirectory = new File(context.getFilesDir(), HOSTS_LIST_DIRECTORY);
+    }
+
+    /**
+     * Parse every bundled and downloaded list into the builder. Returns the
+     * number of rules and hosts added.
+     */
+    public int loadInto(FilterEngine.Builder builder) {
+        return loadAssets(builder, ASSET_DIRECTORY, false)
+            + loadFiles(builder, listDirectory, false)
+            + loadAssets(builder, HOSTS_ASSET_DIRECTORY, true)
+            + loadFiles(builder, hostsListDirectory, true);
+    }
+
+    private int loadAssets(FilterEngine.Builder builder, String directory, boolean hostsFormat) {
+        int added = 0;
+        try {
+            String[] assets = context.getAssets().list(directory);
+            if (assets != null) {
+                for (String name : assets) {
+                    if (name.endsWith(".txt")) {
+                        try (InputStream input = context.getAssets().open(directory + "/" + name)) {
+                            added += load(builder, input, hostsFormat);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading bundled lists from " + directory, e);
+        }
+        return added;
+    }
+
+    private int loadFiles(FilterEngine.Builder builder, File directory, boolean hostsFormat) {
+        int added = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().endsWith(".txt")) {
+                    continue;
+                }
+                try (InputStream input = new FileInputStream(file)) {
+                    added += load(builder, input, hostsFormat);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error loading list " + file.getName(), e);
+                }
+            }
+        }
+        return added;
+    }
+
+    private static int load(FilterEngine.Builder builder, InputStream input,
+                            boolean hostsFormat) throws IOException {
+        Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+        return hostsFormat ? builder.addHostsFile(reader) : builder.addFilterList(reader);
+    }
+
+    /**
+     * Fingerprint of every source list: bundled assets (which only change
+     * with the APK) and the name, size and age of each downloaded list.
+     */
+    public long getSourceFingerprint() {
+        long fingerprint = new File(context.getApplicationInfo().sourceDir).lastModified();
+        fingerprint = fingerprintFiles(fingerprint, listDirectory);
+        return fingerprintFiles(31 * fingerprint, hostsListDirectory);
+    }
+
+    private static long fingerprintFiles(long fingerprint, File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.getName().endsWith(".txt")) {
+                    fingerprint = 31 * fingerprint + file.getName().hashCode();
+                    fingerprint = 31 * fingerprint + file.length();
+                    fingerprint = 31 * fingerprint + file.lastModified();
+                }
+            }
+        }
+        return fingerprint;
+    }
+
+    public boolean isHostsListEnabled() {
+        return prefs.getBoolean(KEY_HOSTS_LIST_ENABLED, false); // Default disabled
+    }
+
+    /**
+     * Turn the hosts list subscription on or off. Turning it off deletes the
+     * downloaded lists; returns true if that changed the sources.
+     */
+    public boolean setHostsListEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_HOSTS_LIST_ENABLED, enabled).apply();
+        boolean changed = false;
+        if (!enabled) {
+            for (String[] subscription : HOSTS_SUBSCRIPTIONS) {
+                changed |= new File(hostsListDirectory, subscription[0]).delete();
+            }
+        }
+        return changed;
+    }
+
+    public boolean isUpdateDue() {
+        long lastUpdate = prefs.getLong(KEY_LAST_UPDATE, 0);
+        return System.currentTimeMillis() - lastUpdate >= UPDATE_INTERVAL_MS;
+    }
+
+    public long getLastUpdateTime() {
+        return prefs.getLong(KEY_LAST_UPDATE, 0);
+    }
+
+    /**
+     * Download all subscriptions. Blocks, so call it off the main thread.
+     * Returns true if any list changed on disk.
+     */
+    public boolean updateSubscriptions() {
+        boolean[] allSucceeded = {true};
+        boolean changed = update(SUBSCRIPTIONS, listDirectory, allSucceeded);
+        if (isHostsListEnabled()) {
+            changed |= update(HOSTS_SUBSCRIPTIONS, hostsListDirectory, allSucceeded);
+        }
+        if (allSucceeded[0]) {
+            prefs.edit().putLong(KEY_LAST_UPDATE, System.currentTimeMillis()).apply();
+        }
+        return changed;
+    }
+
+    private boolean update(String[][] subscriptions, File directory, boolean[] allSucceeded) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Cannot create " + directory);
+            allSucceeded[0] = false;
+            return false;
+        }
+        boolean changed = false;
+        for (String[] subscription : subscriptions) {
+            File target = new File(directory, subscription[0]);
+            try {
+                changed |= download(subscription[1], target);
+            } catch (IOException e) {
+                allSucceeded[0] = false;
+                Log.w(TAG, "Failed to update " + subscription[0] + ": " + e.getMessage());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Fetch a list into the target file unless it is unchanged on the server.
+     */
+    private boolean download(String url, File target) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        if (target.exists()) {
+            connection.setIfModifiedSince(target.lastModified());
+        }
+        File temp = new File(target.getPath() + ".tmp");
+        try {
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return false;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + code);
+            }
+            try (InputStream input = connection.getInputStream();
+                 OutputStream output = new FileOutputStream(temp)) {
+                byte[] buffer = new byte[16 * 1024];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                }
+            }
+            if (!temp.renameTo(target)) {
+                throw new IOException("Cannot replace " + target.getName());
+            }
+            return true;
+        } finally {
+            temp.delete();
+            connection.disconnect();
+        }
+    }
+}
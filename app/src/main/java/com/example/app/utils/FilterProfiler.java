@@ -0,0 +1,225 @@
+package com.example.app.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional instrumentation of the ad blocker: which rules fire, which rules
+ * are expensive to evaluate, and how long request checks take.
+ *
+ * Hits are counted for every request the engine evaluates; requests answered
+ * from the verdict cache never reach a rule and show up in the cache hit
+ * ratio instead. Timing is sampled: one request in {@code sampleRate} has its
+ * total latency put in a histogram and each rule it evaluates timed. All
+ * counters are LongAdders, so the interception threads do not contend.
+ */
+public class FilterProfiler {
+    /** Rule name for hosts matched by the hashed host list. */
+    public static final String HOST_LIST_RULE = "[host list]";
+    /** Upper bounds of the latency histogram buckets, in microseconds. */
+    public static final long[] LATENCY_BUCKETS_MICROS = {10, 25, 50, 100, 250, 500, 1000, 5000};
+    // Rules seen beyond this many are lumped together, to bound memory
+    private static final int MAX_TRACKED_RULES = 20000;
+    private static final String OTHER_RULES = "[other rules]";
+
+    private final int sampleRate;
+    private final ConcurrentHashMap<String, RuleStats> rules = new ConcurrentHashMap<>();
+    private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKETS_MICROS.length + 1];
+    private final LongAdder sampledRequests = new LongAdder();
+    private final LongAdder sampledNanos = new LongAdder();
+    private volatile boolean enabled;
+
+    public FilterProfiler(int sampleRate) {
+        this.sampleRate = Math.max(1, sampleRate);
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            latencyBuckets[i] = new LongAdder();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Whether to time the current request.
+     */
+    public boolean shouldSample() {
+        return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+    }
+
+    public void recordHit(String rule) {
+        statsFor(rule).hits.increment();
+    }
+
+    /**
+     * Time spent evaluating one candidate rule for a sampled request.
+     */
+    public void recordEvaluation(NetworkFilter filter, long nanos) {
+        RuleStats stats = statsFor(filter.getSource());
+        stats.evaluations.increment();
+        stats.nanos.add(nanos);
+    }
+
+    /**
+     * Total time a sampled request took to check.
+     */
+    public void recordRequest(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS_MICROS.length && micros > LATENCY_BUCKETS_MICROS[bucket]) {
+            bucket++;
+        }
+        latencyBuckets[bucket].increment();
+        sampledRequests.increment();
+        sampledNanos.add(nanos);
+    }
+
+    private RuleStats statsFor(String rule) {
+        RuleStats stats = rules.get(rule);
+        if (stats == null) {
+            if (rules.size() >= MAX_TRACKED_RULES) {
+                rule = OTHER_RULES;
+            }
+            stats = rules.computeIfAbsent(rule, RuleStats::new);
+        }
+        return stats;
+    }
+
+    public void reset() {
+        rules.clear();
+        for (LongAdder bucket : latencyBuckets) {
+            bucket.reset();
+        }
+        sampledRequests.reset();
+        sampledNanos.reset();
+    }
+
+    public long[] getLatencyHistogram() {
+        long[] counts = new long[latencyBuckets.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = latencyBuckets[i].sum();
+        }
+        return counts;
+    }
+
+    public long getSampledRequestCount() {
+        return sampledRequests.sum();
+    }
+
+    public double getAverageRequestMicros() {
+        long count = sampledRequests.sum();
+        return count == 0 ? 0 : sampledNanos.sum() / 1000.0 / count;
+    }
+
+    /**
+     * The rules with the most hits.
+     */
+    public List<RuleStats> getTopRulesByHits(int limit) {
+        return top(limit, (a, b) -> Long.compare(b.getHits(), a.getHits()));
+    }
+
+    /**
+     * The rules with the most total sampled evaluation time.
+     */
+    public List<RuleStats> getSlowestRules(int limit) {
+        return top(limit, (a, b) -> Long.compare(b.getTotalNanos(), a.getTotalNanos()));
+    }
+
+    private List<RuleStats> top(int limit, Comparator<RuleStats> order) {
+        List<RuleStats> all = new ArrayList<>(rules.values());
+        Collections.sort(all, order);
+        return all.size() > limit ? all.subList(0, limit) : all;
+    }
+
+    /**
+     * Human-readable report for the performance screen.
+     */
+    public String getSummary(VerdictCache cache, int limit) {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format(Locale.US,
+                "Profiler: %s, 1 in %d requests timed\nVerdict cache: %.1f%% hits (%d/%d)\n",
+                enabled ? "ON" : "OFF", sampleRate, cache.getHitRate() * 100,
+                cache.getHitCount(), cache.getHitCount() + cache.getMissCount()));
+        summary.append(String.format(Locale.US, "Sampled requests: %d, avg %.1f µs\n",
+                getSampledRequestCount(), getAverageRequestMicros()));
+        long[] histogram = getLatencyHistogram();
+        for (int i = 0; i < histogram.length; i++) {
+            String label = i < LATENCY_BUCKETS_MICROS.length
+                    ? "≤" + LATENCY_BUCKETS_MICROS[i] + " µs"
+                    : ">" + LATENCY_BUCKETS_MICROS[LATENCY_BUCKETS_MICROS.length - 1] + " µs";
+            summary.append(String.format(Locale.US, "  %-10s %d\n", label, histogram[i]));
+        }
+        summary.append("\nMost hits:\n");
+        for (RuleStats stats : getTopRulesByHits(limit)) {
+            if (stats.getHits() > 0) {
+                summary.append(String.format(Locale.US, "  %6d  %s\n", stats.getHits(),
+                        abbreviate(stats.rule)));
+            }
+        }
+        summary.append("\nMost time (sampled):\n");
+        for (RuleStats stats : getSlowestRules(limit)) {
+            if (stats.getEvaluations() > 0) {
+                summary.append(String.format(Locale.US, "  %8.1f µs  %s\n",
+                        stats.getTotalNanos() / 1000.0, abbreviate(stats.rule)));
+            }
+        }
+        return summary.toString();
+    }
+
+    private static String abbreviate(String rule) {
+        return rule.length() > 60 ? rule.substring(0, 57) + "..." : rule;
+    }
+
+    /**
+     * Write one CSV row per rule: rule, hits, sampled evaluations, total and
+     * average sampled nanoseconds.
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("rule,hits,sampled_evaluations,sampled_total_ns,sampled_avg_ns\n");
+        for (RuleStats stats : getTopRulesByHits(Integer.MAX_VALUE)) {
+            long evaluations = stats.getEvaluations();
+            writer.write('"' + stats.rule.replace("\"", "\"\"") + "\","
+                    + stats.getHits() + ',' + evaluations + ',' + stats.getTotalNanos() + ','
+                    + (evaluations == 0 ? 0 : stats.getTotalNanos() / evaluations) + '\n');
+        }
+    }
+
+    public static final class RuleStats {
+        public final String rule;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder evaluations = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        RuleStats(String rule) {
+            this.rule = rule;
+        }
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getEvaluations() {
+            return evaluations.sum();
+        }
+
+        public long getTotalNanos() {
+            return nanos.sum();
+        }
+    }
+}
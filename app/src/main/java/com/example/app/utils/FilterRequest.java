@@ -0,0 +1,38 @@
+package com.example.app.utils;
+
+/**
+ * A request being checked against the filter rules: the lower-cased URL, the
+ * position of its host, its resource type and, when known, the page it was
+ * made from.
+ */
+public class FilterRequest {
+    public static final int PARTY_UNKNOWN = 0;
+    public static final int PARTY_FIRST = 1;
+    public static final int PARTY_THIRD = 2;
+
+    public final String url;
+    public final int hostStart;
+    public final int hostEnd;
+    public final int type;
+    /** Host of the top-level page, or null if unknown. */
+    public final String documentHost;
+    public final int party;
+
+    public FilterRequest(String lowerUrl, int type, String documentHost, int party) {
+        this.url = lowerUrl;
+        int start = AdBlocker.findHostStart(lowerUrl);
+        this.hostStart = start < 0 ? 0 : start;
+        this.hostEnd = start < 0 ? 0 : AdBlocker.findHostEnd(lowerUrl, start);
+        this.type = type;
+        this.documentHost = documentHost;
+        this.party = party;
+    }
+
+    public FilterRequest(String lowerUrl, int type) {
+        this(lowerUrl, type, null, PARTY_UNKNOWN);
+    }
+
+    public boolean hasHost() {
+        return hostEnd > hostStart;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.app.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.app.database.DatabaseHelper;
+import com.example.app.models.HistoryRetention;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes history the retention setting no longer keeps, then gives the
+ * freed pages back to the file system.
+ *
+ * Visits are deleted oldest first, {@link #CHUNK_SIZE} per transaction, so
+ * history recording and the history list are never held up for long and
+ * the work can stop between chunks. The daily run waits for the device to
+ * be idle; only it may rebuild an older database for incremental vacuum.
+ */
+public class HistoryPruneWorker extends Worker {
+    private static final String TAG = "HistoryPruneWorker";
+    private static final String WORK_NAME = "history_prune";
+    private static final String WORK_NAME_NOW = "history_prune_now";
+    private static final String KEY_IDLE = "idle";
+    private static final int CHUNK_SIZE = 500;
+
+    public HistoryPruneWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Prune once a day while the device is idle. Safe to call on every start.
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresDeviceIdle(true)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(HistoryPruneWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .setInputData(new Data.Builder().putBoolean(KEY_IDLE, true).build())
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(WORK_NAME,
+                ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    /**
+     * Prune soon, e.g. after the retention setting was made shorter.
+     */
+    public static void runNow(Context context) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(HistoryPruneWorker.class).build();
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME_NOW,
+                ExistingWorkPolicy.REPLACE, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        HistoryRetention retention = new HistoryRetentionPreferences(getApplicationContext()).getRetention();
+        DatabaseHelper databaseHelper = DatabaseHelper.getInstance(getApplicationContext());
+        try {
+            int pruned = 0;
+            if (retention.getMaxAgeMs() > 0) {
+                long cutoff = System.currentTimeMillis() - retention.getMaxAgeMs();
+                int deleted;
+                do {
+                    deleted = databaseHelper.pruneOldestVisits(cutoff, CHUNK_SIZE);
+                    pruned += deleted;
+                } while (deleted == CHUNK_SIZE && !isStopped());
+            }
+            if (retention.getMaxVisits() > 0) {
+                long excess = databaseHelper.getVisitCount() - retention.getMaxVisits();
+                while (excess > 0 && !isStopped()) {
+                    int deleted = databaseHelper.pruneOldestVisits(Long.MAX_VALUE,
+                            (int) Math.min(excess, CHUNK_SIZE));
+                    if (deleted == 0) break;
+                    excess -= deleted;
+                    pruned += deleted;
+                }
+            }
+            if (retention.getMaxBytes() > 0) {
+                // Deleted rows free their pages at once, so the size drops as we go
+                while (databaseHelper.getUsedBytes() > retention.getMaxBytes() && !isStopped()) {
+                    int deleted = databaseHelper.pruneOldestVisits(Long.MAX_VALUE, CHUNK_SIZE);
+                    if (deleted == 0) break;
+                    pruned += deleted;
+                }
+            }
+
+            if (!databaseHelper.isIncrementalVacuumEnabled()) {
+                if (getInputData().getBoolean(KEY_IDLE, false) && !isStopped()) {
+                    databaseHelper.enableIncrementalVacuum();
+                }
+            } else if (pruned > 0) {
+                databaseHelper.incrementalVacuum();
+            }
+            return Result.success();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error pruning history", e);
+            return Result.retry();
+        }
+    }
+}
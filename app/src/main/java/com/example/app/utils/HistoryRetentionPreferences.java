@@ -0,0 +1,38 @@
+package com.example.app.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import com.example.app.models.HistoryRetention;
+
+public class HistoryRetentionPreferences {
+    private static final String PREFS_NAME = "history_prefs";
+    private static final String KEY_RETENTION = "history_retention";
+    // Bounded by default, so history stays small for users who never clear it
+    private static final HistoryRetention DEFAULT_RETENTION = HistoryRetention.THREE_MONTHS;
+
+    private final SharedPreferences prefs;
+
+    public HistoryRetentionPreferences(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public HistoryRetention getRetention() {
+        int ordinal = prefs.getInt(KEY_RETENTION, DEFAULT_RETENTION.ordinal());
+        return HistoryRetention.fromOrdinal(ordinal);
+    }
+
+    public void setRetention(HistoryRetention retention) {
+        prefs.edit()
+             .putInt(KEY_RETENTION, retention.ordinal())
+             .apply();
+    }
+
+    public String[] getRetentionNames() {
+        HistoryRetention[] retentions = HistoryRetention.values();
+        String[] names = new String[retentions.length];
+        for (int i = 0; i < retentions.length; i++) {
+            names[i] = retentions[i].getName();
+        }
+        return names;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.app.utils;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Read-only set of blocked hosts stored as a sorted array of 64-bit hashes.
+ *
+ * The hashes can live in a memory-mapped snapshot, so the set costs eight
+ * bytes per host and nothing has to be parsed or allocated to load it.
+ * A lookup hashes the host from its last character backwards; every label
+ * boundary passed on the way yields the hash of one parent domain, which is
+ * then looked up with a binary search. Hosts are expected in lower case.
+ *
+ * Most hosts are not blocked, so a Bloom filter of about ten bits per entry
+ * is checked first; it rejects roughly 99% of the parent domains without
+ * touching the hash array, which for a list of a million hosts would
+ * otherwise cost twenty probes per label.
+ */
+public class HostHashSet {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int BLOOM_BITS_PER_ENTRY = 10;
+    private static final int BLOOM_HASHES = 5;
+
+    private final LongBuffer hashes;
+    private final LongBuffer bloom;
+    private final long bloomBits;
+    private final int size;
+
+    public HostHashSet(LongBuffer hashes, LongBuffer bloom) {
+        this.hashes = hashes;
+        this.bloom = bloom;
+        this.bloomBits = bloom.limit() * 64L;
+        this.size = hashes.limit();
+    }
+
+    /**
+     * Check the host found at {@code [start, end)} of {@code text}, and each of
+     * its parent domains.
+     */
+    public boolean matches(CharSequence text, int start, int end) {
+        if (size == 0 || start >= end) {
+            return false;
+        }
+        long hash = FNV_OFFSET;
+        for (int i = end - 1; i >= start; i--) {
+            hash ^= text.charAt(i);
+            hash *= FNV_PRIME;
+            if ((i == start || text.charAt(i - 1) == '.') && mightContain(hash) && contains(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean matches(String host) {
+        return host != null && matches(host, 0, host.length());
+    }
+
+    private boolean mightContain(long hash) {
+        if (bloomBits == 0) {
+            return true;
+        }
+        long h1 = hash & 0xffffffffL;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = (h1 + i * h2) % bloomBits;
+            if ((bloom.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean contains(long hash) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = hashes.get(mid);
+            if (value < hash) {
+                low = mid + 1;
+            } else if (value > hash) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Bytes taken by the hash array and the Bloom filter.
+     */
+    public long getMemoryUsage() {
+        return size * 8L + getBloomMemoryUsage();
+    }
+
+    public long getBloomMemoryUsage() {
+        return bloomBits / 8;
+    }
+
+    /**
+     * Hash of a whole host, matching what {@link #matches} computes for it.
+     */
+    static long hashHost(String host) {
+        long hash = FNV_OFFSET;
+        for (int i = host.length() - 1; i >= 0; i--) {
+            hash ^= host.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Sort the hashes and drop duplicates; returns the new length.
+     */
+    static int sortUnique(long[] result, int length) {
+        Arrays.sort(result, 0, length);
+        int unique = 0;
+        for (int i = 0; i < length; i++) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[unique++] = result[i];
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Bloom filter words for the first {@code length} hashes.
+     */
+    static long[] buildBloom(long[] hashes, int length) {
+        if (length == 0) {
+            return new long[0];
+        }
+        long[] words = new long[(int) ((length * (long) BLOOM_BITS_PER_ENTRY + 63) / 64)];
+        long bits = words.length * 64L;
+        for (int n = 0; n < length; n++) {
+            long h1 = hashes[n] & 0xffffffffL;
+            long h2 = (hashes[n] >>> 32) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = (h1 + i * h2) % bits;
+                words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.app.utils;
+
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Loads a top-level HTML document on WebView's behalf so it can be passed
+ * through {@link HtmlFilterStream} before WebView parses it.
+ *
+ * Only plain {@code 200 text/html} answers to GET requests are taken over.
+ * Redirects, errors, downloads and anything else are abandoned after the
+ * response headers and WebView loads the URL itself, at the cost of asking
+ * twice for those.
+ */
+public class HtmlDocumentLoader {
+    private static final String TAG = "HtmlDocumentLoader";
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    private HtmlDocumentLoader() {}
+
+    /**
+     * Fetch the document of a main-frame request, or return null to let
+     * WebView load it. Call from shouldInterceptRequest only.
+     */
+    public static WebResourceResponse load(WebResourceRequest request,
+                                           HtmlFilterStream.ElementFilter filter) {
+        String url = request.getUrl().toString();
+        if (!"GET".equalsIgnoreCase(request.getMethod())
+                || !(url.startsWith("http://") || url.startsWith("https://"))) {
+            return null;
+        }
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            // WebView must see every redirect to update its URL and history
+            connection.setInstanceFollowRedirects(false);
+            Map<String, String> headers = request.getRequestHeaders();
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    // Leave compression to HttpURLConnection, which then decodes it
+                    if (!"Accept-Encoding".equalsIgnoreCase(header.getKey())) {
+                        connection.setRequestProperty(header.getKey(), header.getValue());
+                    }
+                }
+            }
+            CookieManager cookieManager = CookieManager.getInstance();
+            String cookies = cookieManager.getCookie(url);
+            if (cookies != null && !cookies.isEmpty()) {
+                connection.setRequestProperty("Cookie", cookies);
+            }
+
+            int code = connection.getResponseCode();
+            String contentType = connection.getContentType();
+            String mimeType = getMimeType(contentType);
+            String charset = getCharset(contentType);
+            if (code != HttpURLConnection.HTTP_OK || !"text/html".equals(mimeType)
+                    || (charset != null && charset.startsWith("utf-16"))
+                    || (charset != null && charset.startsWith("utf-32"))) {
+                connection.disconnect();
+                return null;
+            }
+
+            Map<String, String> responseHeaders = new HashMap<>();
+            for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+                String name = header.getKey();
+                if (name == null) {
+                    continue; // Status line
+                }
+                String lowerName = name.toLowerCase(Locale.ROOT);
+                if (lowerName.equals("set-cookie") || lowerName.equals("set-cookie2")) {
+                    for (String value : header.getValue()) {
+                        cookieManager.setCookie(url, value);
+                    }
+                } else if (!lowerName.equals("content-length") && !lowerName.equals("content-encoding")
+                        && !lowerName.equals("transfer-encoding") && !lowerName.equals("connection")
+                        && !lowerName.equals("keep-alive")) {
+                    responseHeaders.put(name, String.join(", ", header.getValue()));
+                }
+            }
+            String reason = connection.getResponseMessage();
+            InputStream body = new DisconnectingStream(
+                    new HtmlFilterStream(connection.getInputStream(), filter), connection);
+            return new WebResourceResponse(mimeType, charset, code,
+                    reason == null || reason.isEmpty() ? "OK" : reason, responseHeaders, body);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Falling back to WebView for " + url, e);
+            if (connection != null) {
+                connection.disconnect();
+            }
+            return null;
+        }
+    }
+
+    private static String getMimeType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int semicolon = contentType.indexOf(';');
+        return (semicolon < 0 ? contentType : contentType.substring(0, semicolon))
+                .trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String getCharset(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            String[] pair = parameter.trim().split("=", 2);
+            if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("charset")) {
+                return pair[1].trim().replace("\"", "").toLowerCase(Locale.ROOT);
+            }
+        }
+        // Unknown: WebView sniffs <meta charset> as usual
+        return null;
+    }
+
+    /**
+     * Releases the connection when WebView closes the body.
+     */
+    private static class DisconnectingStream extends java.io.FilterInputStream {
+        private final HttpURLConnection connection;
+
+        DisconnectingStream(InputStream in, HttpURLConnection connection) {
+            super(in);
+            this.connection = connection;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.example.app.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streams an HTML document through, dropping {@code <script src>} and
+ * {@code <iframe>} elements that an {@link ElementFilter} rejects.
+ *
+ * The document is tokenized chunk by chunk as WebView reads it; only the
+ * tag being examined is held back, and a tag longer than
+ * {@link #MAX_TAG_LENGTH} is passed through unexamined. Comments and the
+ * content of raw text elements like inline scripts are copied verbatim, so a
+ * {@code "<iframe"} inside a string literal is never mistaken for a tag.
+ * Works on the bytes of any ASCII-compatible encoding.
+ */
+public class HtmlFilterStream extends FilterInputStream {
+    private static final int MAX_TAG_LENGTH = 8192;
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final int STATE_TEXT = 0;
+    private static final int STATE_TAG = 1;
+    private static final int STATE_COMMENT = 2;
+    private static final int STATE_RAW_TEXT = 3;
+    private static final int STATE_SKIP = 4;
+    private static final int STATE_SKIP_END_TAG = 5;
+
+    private static final Pattern SRC_ATTRIBUTE = Pattern.compile(
+            "\\ssrc\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s>]+))", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Decides which elements to drop.
+     */
+    public interface ElementFilter {
+        /**
+         * @param tagName {@code "script"} or {@code "iframe"}
+         * @param src the src attribute as written, with {@code &amp;} decoded
+         */
+        boolean shouldRemove(String tagName, String src);
+    }
+
+    private final ElementFilter filter;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private final byte[] tag = new byte[MAX_TAG_LENGTH];
+    private final byte[] single = new byte[1];
+    private byte[] output = new byte[CHUNK_SIZE * 2];
+    private int outputStart;
+    private int outputEnd;
+    private int tagLength;
+    private int state = STATE_TEXT;
+    private byte quote;
+    private byte lastNonSpace;
+    // "</name" of the raw text element being copied or skipped
+    private byte[] endTag;
+    private int matched;
+    private boolean eof;
+    private int removedCount;
+
+    public HtmlFilterStream(InputStream in, ElementFilter filter) {
+        super(in);
+        this.filter = filter;
+    }
+
+    /**
+     * Number of elements dropped so far.
+     */
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (outputStart == outputEnd) {
+            if (eof) {
+                return -1;
+            }
+            fill();
+        }
+        int count = Math.min(length, outputEnd - outputStart);
+        System.arraycopy(output, outputStart, buffer, offset, count);
+        outputStart += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n) {
+            int count = read(chunk, 0, (int) Math.min(chunk.length, n - skipped));
+            if (count < 0) {
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return outputEnd - outputStart;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void fill() throws IOException {
+        outputStart = 0;
+        outputEnd = 0;
+        int count = in.read(chunk, 0, chunk.length);
+        if (count < 0) {
+            eof = true;
+            if (state == STATE_TAG) {
+                // Unterminated tag at the end of the document
+                emit(tag, tagLength);
+                state = STATE_TEXT;
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            process(chunk[i]);
+        }
+    }
+
+    private void process(byte b) {
+        switch (state) {
+            case STATE_TEXT:
+                if (b == '<') {
+                    startTag();
+                } else {
+                    emit(b);
+                }
+                break;
+            case STATE_TAG:
+                processTag(b);
+                break;
+            case STATE_COMMENT:
+                emit(b);
+                // Ends at "-->", also after any number of dashes
+                if (b == '-') {
+                    matched++;
+                } else {
+                    if (b == '>' && matched >= 2) {
+                        state = STATE_TEXT;
+                    }
+                    matched = 0;
+                }
+                break;
+            case STATE_RAW_TEXT:
+                emit(b);
+                if (match(b, endTag)) {
+                    state = STATE_TEXT;
+                }
+                break;
+            case STATE_SKIP:
+                if (match(b, endTag)) {
+                    state = STATE_SKIP_END_TAG;
+                }
+                break;
+            case STATE_SKIP_END_TAG:
+                if (b == '>') {
+                    state = STATE_TEXT;
+                }
+                break;
+        }
+    }
+
+    private void startTag() {
+        state = STATE_TAG;
+        tag[0] = '<';
+        tagLength = 1;
+        quote = 0;
+        lastNonSpace = '<';
+    }
+
+    private void processTag(byte b) {
+        if (tagLength == 1 && !isLetter(b) && b != '/' && b != '!' && b != '?') {
+            // "a < b" in text, not a tag
+            emit(tag, tagLength);
+            state = STATE_TEXT;
+            process(b);
+            return;
+        }
+        if (tagLength == MAX_TAG_LENGTH) {
+            emit(tag, tagLength);
+            state = STATE_TEXT;
+            process(b);
+            return;
+        }
+        tag[tagLength++] = b;
+        if (tagLength == 4 && tag[1] == '!' && tag[2] == '-' && tag[3] == '-') {
+            emit(tag, tagLength);
+            state = STATE_COMMENT;
+            matched = 0;
+            return;
+        }
+        if (quote != 0) {
+            if (b == quote) {
+                quote = 0;
+            }
+            return;
+        }
+        if ((b == '"' || b == '\'') && lastNonSpace == '=') {
+            quote = b;
+        } else if (b == '>') {
+            state = STATE_TEXT;
+            finishTag();
+            return;
+        }
+        if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+            lastNonSpace = b;
+        }
+    }
+
+    private void finishTag() {
+        String name = readTagName();
+        if (name.equals("script") || name.equals("iframe")) {
+            String src = readSrc();
+            if (src != null && filter.shouldRemove(name, src)) {
+                removedCount++;
+                enterRawText(name, STATE_SKIP);
+                return;
+            }
+        }
+        emit(tag, tagLength);
+        if (name.equals("script") || name.equals("iframe") || name.equals("style")
+                || name.equals("textarea") || name.equals("title") || name.equals("xmp")
+                || name.equals("noscript")) {
+            enterRawText(name, STATE_RAW_TEXT);
+        }
+    }
+
+    private void enterRawText(String name, int nextState) {
+        byte[] pattern = new byte[name.length() + 2];
+        pattern[0] = '<';
+        pattern[1] = '/';
+        for (int i = 0; i < name.length(); i++) {
+            pattern[i + 2] = (byte) name.charAt(i);
+        }
+        endTag = pattern;
+        matched = 0;
+        state = nextState;
+    }
+
+    /**
+     * Lower-case name of the buffered start tag, or "" for end tags,
+     * comments and declarations.
+     */
+    private String readTagName() {
+        StringBuilder name = new StringBuilder();
+        for (int i = 1; i < tagLength; i++) {
+            byte b = tag[i];
+            if (isLetter(b) || (i > 1 && b >= '0' && b <= '9')) {
+                name.append((char) (b | 0x20));
+            } else {
+                break;
+            }
+        }
+        return name.toString();
+    }
+
+    private String readSrc() {
+        Matcher matcher = SRC_ATTRIBUTE.matcher(new String(tag, 0, tagLength, StandardCharsets.UTF_8));
+        if (!matcher.find()) {
+            return null;
+        }
+        String src = matcher.group(1) != null ? matcher.group(1)
+                : matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+        return src.trim().replace("&amp;", "&");
+    }
+
+    /**
+     * Advance the case-insensitive search for {@code pattern}; true once
+     * all of it has been seen.
+     */
+    private boolean match(byte b, byte[] pattern) {
+        byte lower = isLetter(b) ? (byte) (b | 0x20) : b;
+        if (lower == pattern[matched]) {
+            matched++;
+        } else {
+            matched = lower == pattern[0] ? 1 : 0;
+        }
+        if (matched == pattern.length) {
+            matched = 0;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isLetter(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private void emit(byte b) {
+        ensureOutput(1);
+        output[outputEnd++] = b;
+    }
+
+    private void emit(byte[] bytes, int length) {
+        ensureOutput(length);
+        System.arraycopy(bytes, 0, output, outputEnd, length);
+        outputEnd += length;
+    }
+
+    private void ensureOutput(int length) {
+        if (outputEnd + length > output.length) {
+            output = Arrays.copyOf(output, Math.max(output.length * 2, outputEnd + length));
+        }
+    }
+}
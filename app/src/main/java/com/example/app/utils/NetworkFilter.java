@@ -0,0 +1,477 @@
+package com.example.app.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A single compiled URL blocking or exception rule.
+ *
+ * Rules are either the built-in regular expressions or Adblock Plus network
+ * filters ({@code ||host^}, {@code |} anchors, {@code *} wildcards, the
+ * {@code ^} separator and {@code $} options). Most rules are just literal
+ * fragments separated by wildcards, so they are matched with plain
+ * {@link String#indexOf} calls in sequence. Only rules that use real regular
+ * expression syntax fall back to a {@link Pattern}. URLs are expected in
+ * lower case.
+ */
+public class NetworkFilter {
+    private static final String[] EMPTY = new String[0];
+
+    private final String source;
+    private final String[] parts;
+    private final Pattern pattern;
+    private final boolean hostAnchored;
+    private final boolean startAnchored;
+    private final boolean endAnchored;
+    private final boolean exception;
+    private final int typeMask;
+    private final int party;
+    private final String[] includeDomains;
+    private final String[] excludeDomains;
+
+    private NetworkFilter(String source, String[] parts, Pattern pattern,
+                          boolean hostAnchored, boolean startAnchored, boolean endAnchored,
+                          boolean exception, int typeMask, int party,
+                          String[] includeDomains, String[] excludeDomains) {
+        this.source = source;
+        this.parts = parts;
+        this.pattern = pattern;
+        this.hostAnchored = hostAnchored;
+        this.startAnchored = startAnchored;
+        this.endAnchored = endAnchored;
+        this.exception = exception;
+        this.typeMask = typeMask;
+        this.party = party;
+        this.includeDomains = includeDomains;
+        this.excludeDomains = excludeDomains;
+    }
+
+    /**
+     * Compile a rule written as an unanchored regular expression such as
+     * {@code .*\/ads\/.*}. Rules that only consist of escaped literals and
+     * {@code .*} gaps are turned into substring checks.
+     */
+    public static NetworkFilter fromRegex(String regex) {
+        return fromRegex(regex, RequestType.ALL);
+    }
+
+    /**
+     * Like {@link #fromRegex(String)}, limited to the given request types.
+     */
+    public static NetworkFilter fromRegex(String regex, int typeMask) {
+        String[] parts = literalParts(regex);
+        Pattern pattern = parts == null ? Pattern.compile(regex, Pattern.CASE_INSENSITIVE) : null;
+        return new NetworkFilter(regex, parts, pattern, false, false, false, false,
+                typeMask, FilterRequest.PARTY_UNKNOWN, EMPTY, EMPTY);
+    }
+
+    /**
+     * Parse one line of an Adblock Plus filter list. Returns null for
+     * comments, element hiding rules and rules using options that are not
+     * supported, so that they are skipped rather than over-applied.
+     */
+    public static NetworkFilter parse(String line) {
+        String rule = line.trim();
+        if (rule.isEmpty() || rule.charAt(0) == '!' || rule.charAt(0) == '['
+                || rule.contains("##") || rule.contains("#@#") || rule.contains("#?#")
+                || rule.contains("#$#")) {
+            return null;
+        }
+
+        boolean exception = rule.startsWith("@@");
+        String body = exception ? rule.substring(2) : rule;
+
+        int typeMask = RequestType.ALL_SUBRESOURCES;
+        int party = FilterRequest.PARTY_UNKNOWN;
+        String[] includeDomains = EMPTY;
+        String[] excludeDomains = EMPTY;
+
+        int optionsStart = findOptionsStart(body);
+        if (optionsStart >= 0) {
+            int includedTypes = 0;
+            int excludedTypes = 0;
+            for (String option : body.substring(optionsStart + 1).toLowerCase().split(",")) {
+                boolean negated = option.startsWith("~");
+                String name = negated ? option.substring(1) : option;
+                int type = RequestType.fromOptionName(name);
+                if (type != 0) {
+                    if (negated) {
+                        excludedTypes |= type;
+                    } else {
+                        includedTypes |= type;
+                    }
+                } else if (name.equals("third-party") || name.equals("3p")) {
+                    party = negated ? FilterRequest.PARTY_FIRST : FilterRequest.PARTY_THIRD;
+                } else if (name.equals("first-party") || name.equals("1p")) {
+                    party = negated ? FilterRequest.PARTY_THIRD : FilterRequest.PARTY_FIRST;
+                } else if (!negated && name.startsWith("domain=")) {
+                    List<String> include = new ArrayList<>();
+                    List<String> exclude = new ArrayList<>();
+                    for (String domain : name.substring(7).split("\\|")) {
+                        if (domain.startsWith("~")) {
+                            exclude.add(domain.substring(1));
+                        } else if (!domain.isEmpty()) {
+                            include.add(domain);
+                        }
+                    }
+                    includeDomains = include.toArray(EMPTY);
+                    excludeDomains = exclude.toArray(EMPTY);
+                } else if (!name.equals("match-case") && !name.equals("important")) {
+                    // popup, csp=, redirect= and friends change what the rule does
+                    return null;
+                }
+            }
+            if (includedTypes != 0) {
+                typeMask = includedTypes;
+            }
+            typeMask &= ~excludedTypes;
+            if (typeMask == 0) {
+                return null;
+            }
+            body = body.substring(0, optionsStart);
+        }
+
+        body = body.toLowerCase();
+        if (body.length() > 1 && body.startsWith("/") && body.endsWith("/")) {
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(body.substring(1, body.length() - 1), Pattern.CASE_INSENSITIVE);
+            } catch (RuntimeException e) {
+                return null;
+            }
+            return new NetworkFilter(rule, null, pattern, false, false, false, exception,
+                    typeMask, party, includeDomains, excludeDomains);
+        }
+
+        boolean hostAnchored = false;
+        boolean startAnchored = false;
+        boolean endAnchored = false;
+        if (body.startsWith("||")) {
+            hostAnchored = true;
+            body = body.substring(2);
+        } else if (body.startsWith("|")) {
+            startAnchored = true;
+            body = body.substring(1);
+        }
+        if (body.endsWith("|")) {
+            endAnchored = true;
+            body = body.substring(0, body.length() - 1);
+        }
+
+        List<String> parts = new ArrayList<>();
+        for (String part : body.split("\\*")) {
+            if (!part.isEmpty()) {
+                parts.add(part);
+            }
+        }
+        if (body.startsWith("*")) {
+            startAnchored = false;
+            hostAnchored = false;
+        }
+        if (body.endsWith("*")) {
+            endAnchored = false;
+        }
+        if (parts.isEmpty()) {
+            // "*" or an empty pattern would match every request
+            return null;
+        }
+        return new NetworkFilter(rule, parts.toArray(new String[0]), null,
+                hostAnchored, startAnchored, endAnchored, exception,
+                typeMask, party, includeDomains, excludeDomains);
+    }
+
+    /**
+     * Index of the '$' that starts the options, or -1. Regex rules may
+     * contain '$' themselves, so only a '$' after the closing slash counts.
+     */
+    private static int findOptionsStart(String body) {
+        int dollar = body.lastIndexOf('$');
+        if (dollar < 0) {
+            return -1;
+        }
+        if (body.startsWith("/") && body.lastIndexOf('/') > dollar) {
+            return -1;
+        }
+        return dollar;
+    }
+
+    public boolean matches(String lowerUrl) {
+        return matches(new FilterRequest(lowerUrl, RequestType.OTHER));
+    }
+
+    public boolean matches(FilterRequest request) {
+        if ((typeMask & request.type) == 0 || !matchesParty(request) || !matchesDomain(request)) {
+            return false;
+        }
+        String url = request.url;
+        if (pattern != null) {
+            return pattern.matcher(url).find();
+        }
+        if (!hostAnchored && !startAnchored && !endAnchored && !hasSeparator()) {
+            int from = 0;
+            for (String part : parts) {
+                int index = url.indexOf(part, from);
+                if (index < 0) {
+                    return false;
+                }
+                from = index + part.length();
+            }
+            return true;
+        }
+        return matchesAnchored(request);
+    }
+
+    private boolean matchesAnchored(FilterRequest request) {
+        String url = request.url;
+        int from;
+        String first = parts[0];
+        if (hostAnchored) {
+            if (!request.hasHost()) {
+                return false;
+            }
+            from = -1;
+            // The pattern must start at the host or at one of its label boundaries
+            for (int i = request.hostStart; i < request.hostEnd; i++) {
+                if (i == request.hostStart || url.charAt(i - 1) == '.') {
+                    int end = matchPartAt(url, i, first, parts.length == 1);
+                    if (end >= 0) {
+                        from = end;
+                        break;
+                    }
+                }
+            }
+        } else if (startAnchored) {
+            from = matchPartAt(url, 0, first, parts.length == 1);
+        } else if (parts.length == 1 && endAnchored) {
+            return endsWithPart(url, 0, first);
+        } else {
+            from = findPart(url, 0, first, parts.length == 1);
+        }
+        if (from < 0) {
+            return false;
+        }
+        for (int p = 1; p < parts.length; p++) {
+            boolean last = p == parts.length - 1;
+            if (last && endAnchored) {
+                return endsWithPart(url, from, parts[p]);
+            }
+            from = findPart(url, from, parts[p], last);
+            if (from < 0) {
+                return false;
+            }
+        }
+        return !endAnchored || from == url.length();
+    }
+
+    /**
+     * Leftmost end position of the part at or after {@code from}, or -1.
+     */
+    private static int findPart(String url, int from, String part, boolean last) {
+        if (part.indexOf('^') < 0) {
+            int index = url.indexOf(part, from);
+            return index < 0 ? -1 : index + part.length();
+        }
+        for (int i = from; i <= url.length(); i++) {
+            int end = matchPartAt(url, i, part, last);
+            if (end >= 0) {
+                return end;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean endsWithPart(String url, int from, String part) {
+        for (int i = url.length() - part.length(); i >= from && i >= 0; i--) {
+            int end = matchPartAt(url, i, part, true);
+            if (end == url.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Match the part at exactly {@code position}; returns the end position or
+     * -1. A trailing '^' of the last part may also match the end of the URL.
+     */
+    private static int matchPartAt(String url, int position, String part, boolean last) {
+        int length = url.length();
+        int pos = position;
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            if (c == '^') {
+                if (pos < length && isSeparator(url.charAt(pos))) {
+                    pos++;
+                } else if (pos == length && last && i == part.length() - 1) {
+                    return pos;
+                } else {
+                    return -1;
+                }
+            } else if (pos < length && url.charAt(pos) == c) {
+                pos++;
+            } else {
+                return -1;
+            }
+        }
+        return pos;
+    }
+
+    static boolean isSeparator(char c) {
+        return !((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '-' || c == '.' || c == '%');
+    }
+
+    private boolean hasSeparator() {
+        for (String part : parts) {
+            if (part.indexOf('^') >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesParty(FilterRequest request) {
+        if (party == FilterRequest.PARTY_UNKNOWN) {
+            return true;
+        }
+        // Without the page context a party-restricted rule cannot be applied safely
+        return request.party == party;
+    }
+
+    private boolean matchesDomain(FilterRequest request) {
+        if (includeDomains.length == 0 && excludeDomains.length == 0) {
+            return true;
+        }
+        String host = request.documentHost;
+        if (host == null) {
+            return includeDomains.length == 0;
+        }
+        for (String domain : excludeDomains) {
+            if (isSameOrSubdomain(host, domain)) {
+                return false;
+            }
+        }
+        if (includeDomains.length == 0) {
+            return true;
+        }
+        for (String domain : includeDomains) {
+            if (isSameOrSubdomain(host, domain)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isSameOrSubdomain(String host, String domain) {
+        return host.endsWith(domain)
+                && (host.length() == domain.length()
+                    || host.charAt(host.length() - domain.length() - 1) == '.');
+    }
+
+    /**
+     * If this rule is a plain {@code ||host^} rule without options, return
+     * the host so it can be stored in the domain trie instead.
+     */
+    public String getBlockedHost() {
+        if (!hostAnchored || exception || endAnchored || parts.length != 1
+                || typeMask != RequestType.ALL_SUBRESOURCES
+                || party != FilterRequest.PARTY_UNKNOWN
+                || includeDomains.length != 0 || excludeDomains.length != 0) {
+            return null;
+        }
+        String part = parts[0];
+        if (part.length() < 2 || part.charAt(part.length() - 1) != '^') {
+            return null;
+        }
+        String host = part.substring(0, part.length() - 1);
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '.')) {
+                return null;
+            }
+        }
+        return host;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public boolean isRegex() {
+        return pattern != null;
+    }
+
+    public boolean isException() {
+        return exception;
+    }
+
+    public int getTypeMask() {
+        return typeMask;
+    }
+
+    /**
+     * Literal fragments that every matching URL contains, in order. Empty for
+     * regex rules.
+     */
+    String[] getParts() {
+        return parts != null ? parts : EMPTY;
+    }
+
+    /**
+     * Whether the first fragment is known to start right after a non-token
+     * character (or at the start of the URL).
+     */
+    boolean isStartBounded() {
+        return hostAnchored || startAnchored;
+    }
+
+    /**
+     * Whether the last fragment is known to end at the end of the URL.
+     */
+    boolean isEndBounded() {
+        return endAnchored;
+    }
+
+    /**
+     * Split a regex into literal fragments, or return null if it uses any
+     * syntax other than escapes and {@code .*}.
+     */
+    private static String[] literalParts(String regex) {
+        List<String> parts = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int length = regex.length();
+        for (int i = 0; i < length; i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= length) {
+                    return null;
+                }
+                char escaped = regex.charAt(++i);
+                if (Character.isLetterOrDigit(escaped) || escaped == '^') {
+                    // \d, \w, \b and friends are character classes, not literals,
+                    // and '^' is the separator placeholder in fragments
+                    return null;
+                }
+                current.append(escaped);
+            } else if (c == '.' && i + 1 < length && regex.charAt(i + 1) == '*') {
+                if (current.length() > 0) {
+                    parts.add(current.toString().toLowerCase());
+                    current.setLength(0);
+                }
+                i++;
+            } else if ("[](){}?+*|^$.".indexOf(c) >= 0) {
+                return null;
+            } else {
+                current.append(c);
+            }
+        }
+        if (current.length() > 0) {
+            parts.add(current.toString().toLowerCase());
+        }
+        if (parts.isEmpty()) {
+            return null;
+        }
+        return parts.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.app.utils;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Token index over {@link NetworkFilter}s.
+ *
+ * Every filter is filed under one token: a run of {@code [a-z0-9%]} that the
+ * rule requires to appear as a whole token in any URL it matches. When
+ * checking a URL, it is split into tokens and only the filters filed under
+ * those tokens are evaluated, so the cost per URL depends on the number of
+ * tokens in it rather than on the number of rules. Among the candidate tokens
+ * of a rule the rarest one is picked to keep the buckets small.
+ *
+ * Rules without a usable token (regexes, or literals like "ads" that may sit
+ * inside a longer word) are kept in a separate list that is always checked.
+ *
+ * The index is a flat int section of a rule snapshot: four header ints
+ * (table capacity, start and count of the untokenized ids, total ids), an
+ * open-addressing table of (token hash, first id, id count) triples, and the
+ * rule ids. Filters are fetched from the {@link RulePool} by id, so loading
+ * an index allocates nothing per rule. Instances are immutable and safe to
+ * share between threads.
+ */
+public class NetworkFilterIndex {
+    private static final int HEADER_INTS = 4;
+    private static final int SLOT_INTS = 3;
+
+    private final IntBuffer section;
+    private final RulePool rules;
+    private final int capacity;
+    private final int untokenizedStart;
+    private final int untokenizedCount;
+    private final int size;
+    private final int idsStart;
+
+    NetworkFilterIndex(IntBuffer section, RulePool rules) {
+        this.section = section;
+        this.rules = rules;
+        this.capacity = section.get(0);
+        this.untokenizedStart = section.get(1);
+        this.untokenizedCount = section.get(2);
+        this.size = section.get(3);
+        this.idsStart = HEADER_INTS + capacity * SLOT_INTS;
+    }
+
+    /**
+     * Number of ints taken by the section starting at {@code offset}.
+     */
+    static int sectionLength(IntBuffer buffer, int offset) {
+        return HEADER_INTS + buffer.get(offset) * SLOT_INTS + buffer.get(offset + 3);
+    }
+
+    /**
+     * Return the first filter matching the request, or null.
+     */
+    public NetworkFilter findMatch(FilterRequest request) {
+        return findMatch(request, null);
+    }
+
+    /**
+     * Like {@link #findMatch(FilterRequest)}, timing every candidate rule
+     * evaluated if {@code timer} is not null.
+     */
+    public NetworkFilter findMatch(FilterRequest request, FilterProfiler timer) {
+        String url = request.url;
+        if (capacity > 0) {
+            int length = url.length();
+            int hash = 0;
+            int tokenLength = 0;
+            for (int i = 0; i <= length; i++) {
+                char c = i < length ? url.charAt(i) : '/';
+                if (isTokenChar(c)) {
+                    hash = 31 * hash + c;
+                    tokenLength++;
+                    continue;
+                }
+                if (tokenLength > 0) {
+                    NetworkFilter match = matchBucket(hash, request, timer);
+                    if (match != null) {
+                        return match;
+                    }
+                    hash = 0;
+                    tokenLength = 0;
+                }
+            }
+        }
+        return matchIds(idsStart + untokenizedStart, untokenizedCount, request, timer);
+    }
+
+    public NetworkFilter findMatch(String lowerUrl) {
+        return findMatch(new FilterRequest(lowerUrl, RequestType.OTHER));
+    }
+
+    public boolean matches(FilterRequest request) {
+        return findMatch(request) != null;
+    }
+
+    public boolean matches(String lowerUrl) {
+        return findMatch(lowerUrl) != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private NetworkFilter matchBucket(int hash, FilterRequest request, FilterProfiler timer) {
+        int mask = capacity - 1;
+        int slot = mix(hash) & mask;
+        while (true) {
+            int base = HEADER_INTS + slot * SLOT_INTS;
+            int count = section.get(base + 2);
+            if (count == 0) {
+                return null;
+            }
+            if (section.get(base) == hash) {
+                return matchIds(idsStart + section.get(base + 1), count, request, timer);
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private NetworkFilter matchIds(int from, int count, FilterRequest request,
+                                   FilterProfiler timer) {
+        for (int i = from; i < from + count; i++) {
+            NetworkFilter filter = rules.get(section.get(i));
+            if (filter == null) {
+                continue;
+            }
+            boolean matched;
+            if (timer == null) {
+                matched = filter.matches(request);
+            } else {
+                long start = System.nanoTime();
+                matched = filter.matches(request);
+                timer.recordEvaluation(filter, System.nanoTime() - start);
+            }
+            if (matched) {
+                return filter;
+            }
+        }
+        return null;
+    }
+
+    static boolean isTokenChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '%';
+    }
+
+    static int hashToken(String text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Tokens of a filter that are guaranteed to appear as whole tokens in every
+     * URL the filter matches: runs of token characters that have a non-token
+     * character on both sides inside the same literal fragment, or that sit
+     * against an anchored end of the rule.
+     */
+    static List<String> candidateTokens(NetworkFilter filter) {
+        List<String> tokens = new ArrayList<>();
+        String[] parts = filter.getParts();
+        for (int p = 0; p < parts.length; p++) {
+            String part = parts[p];
+            boolean startBounded = p == 0 && filter.isStartBounded();
+            boolean endBounded = p == parts.length - 1 && filter.isEndBounded();
+            int length = part.length();
+            int i = 0;
+            while (i < length) {
+                if (!isTokenChar(part.charAt(i))) {
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (i < length && isTokenChar(part.charAt(i))) {
+                    i++;
+                }
+                if ((start > 0 || startBounded) && (i < length || endBounded)) {
+                    tokens.add(part.substring(start, i));
+                }
+            }
+        }
+        return tokens;
+    }
+
+    public static class Builder {
+        private final List<NetworkFilter> filters = new ArrayList<>();
+        private final List<Integer> ids = new ArrayList<>();
+
+        /**
+         * Add a filter stored in the rule pool under the given id.
+         */
+        public Builder add(NetworkFilter filter, int id) {
+            if (filter != null) {
+                filters.add(filter);
+                ids.add(id);
+            }
+            return this;
+        }
+
+        public int size() {
+            return filters.size();
+        }
+
+        /**
+         * Lay the index out as a snapshot section.
+         */
+        int[] build() {
+            // First pass: how many rules could use each token
+            Map<String, Integer> tokenCounts = new HashMap<>();
+            List<List<String>> candidates = new ArrayList<>(filters.size());
+            for (NetworkFilter filter : filters) {
+                List<String> tokens = candidateTokens(filter);
+                candidates.add(tokens);
+                for (String token : tokens) {
+                    Integer count = tokenCounts.get(token);
+                    tokenCounts.put(token, count == null ? 1 : count + 1);
+                }
+            }
+
+            // Second pass: file each rule under its rarest token
+            Map<Integer, List<Integer>> byToken = new HashMap<>();
+            List<Integer> untokenized = new ArrayList<>();
+            for (int i = 0; i < filters.size(); i++) {
+                String best = null;
+                int bestCount = Integer.MAX_VALUE;
+                for (String token : candidates.get(i)) {
+                    int count = tokenCounts.get(token);
+                    if (count < bestCount || (count == bestCount && token.length() > best.length())) {
+                        best = token;
+                        bestCount = count;
+                    }
+                }
+                if (best == null) {
+                    untokenized.add(ids.get(i));
+                } else {
+                    int hash = hashToken(best, 0, best.length());
+                    List<Integer> bucket = byToken.get(hash);
+                    if (bucket == null) {
+                        bucket = new ArrayList<>();
+                        byToken.put(hash, bucket);
+                    }
+                    bucket.add(ids.get(i));
+                }
+            }
+
+            int capacity = 0;
+            if (!byToken.isEmpty()) {
+                capacity = 1;
+                while (capacity < byToken.size() * 2) {
+                    capacity <<= 1;
+                }
+            }
+            int[] section = new int[HEADER_INTS + capacity * SLOT_INTS + filters.size()];
+            section[0] = capacity;
+            section[3] = filters.size();
+            int next = 0;
+            int idsStart = HEADER_INTS + capacity * SLOT_INTS;
+            for (Map.Entry<Integer, List<Integer>> entry : byToken.entrySet()) {
+                int hash = entry.getKey();
+                int slot = mix(hash) & (capacity - 1);
+                while (section[HEADER_INTS + slot * SLOT_INTS + 2] != 0) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                int base = HEADER_INTS + slot * SLOT_INTS;
+                section[base] = hash;
+                section[base + 1] = next;
+                section[base + 2] = entry.getValue().size();
+                for (int id : entry.getValue()) {
+                    section[idsStart + next++] = id;
+                }
+            }
+            section[1] = next;
+            section[2] = untokenized.size();
+            for (int id : untokenized) {
+                section[idsStart + next++] = id;
+            }
+            return section;
+        }
+    }
+}
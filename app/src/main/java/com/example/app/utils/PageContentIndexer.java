@@ -0,0 +1,130 @@
+package com.example.app.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.webkit.WebView;
+
+import com.example.app.database.DatabaseHelper;
+
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Indexes the text of visited pages so history can be searched by what the
+ * pages said.
+ *
+ * The page's visible text is read with one script call once it has loaded;
+ * everything after that, decoding, cleanup and the database write, runs on
+ * the indexer thread. Text is cut to {@link #MAX_TEXT_CHARS} with repeated
+ * lines (menus, footers) dropped, and the stored text of all pages, with
+ * its full-text index, is kept under about {@link #MAX_INDEX_BYTES} by
+ * evicting the least recently visited.
+ */
+public class PageContentIndexer {
+    private static final String TAG = "PageContentIndexer";
+    private static final int MAX_TEXT_CHARS = 16 * 1024;
+    private static final long MAX_INDEX_BYTES = 16L * 1024 * 1024;
+    // Pages with less text than this are not worth indexing
+    private static final int MIN_TEXT_CHARS = 64;
+    // Read more than is kept, since cleanup shrinks the text
+    private static final String EXTRACT_SCRIPT = "(function(){var b=document.body;"
+            + "return b?b.innerText.substring(0," + (MAX_TEXT_CHARS * 2) + "):'';})()";
+
+    private static PageContentIndexer instance;
+
+    private final DatabaseHelper databaseHelper;
+    private final Handler handler;
+
+    private PageContentIndexer(Context context) {
+        databaseHelper = DatabaseHelper.getInstance(context);
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    public static synchronized PageContentIndexer getInstance(Context context) {
+        if (instance == null) {
+            instance = new PageContentIndexer(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Index the page {@code view} finished loading. Call on the UI thread,
+     * and not for private tabs.
+     */
+    public void indexPage(WebView view, String url, String title) {
+        if (view == null || url == null
+                || !(url.startsWith("http://") || url.startsWith("https://"))) {
+            return;
+        }
+        view.evaluateJavascript(EXTRACT_SCRIPT, value -> {
+            if (value != null && value.length() > 2) {
+                handler.post(() -> index(url, title, value));
+            }
+        });
+    }
+
+    private void index(String url, String title, String json) {
+        try {
+            Object value = new JSONTokener(json).nextValue();
+            if (!(value instanceof String)) {
+                return;
+            }
+            String text = cleanText((String) value);
+            if (text.length() < MIN_TEXT_CHARS) {
+                return;
+            }
+            databaseHelper.savePageContent(url, title, text, hash(text), MAX_INDEX_BYTES);
+        } catch (JSONException | RuntimeException e) {
+            Log.e(TAG, "Error indexing page text", e);
+        }
+    }
+
+    /**
+     * Collapse whitespace, drop blank and repeated lines, and cut to
+     * {@link #MAX_TEXT_CHARS}.
+     */
+    static String cleanText(String text) {
+        StringBuilder clean = new StringBuilder(Math.min(text.length(), MAX_TEXT_CHARS));
+        Set<String> seen = new HashSet<>();
+        StringBuilder line = new StringBuilder();
+        int length = text.length();
+        for (int i = 0; i <= length && clean.length() < MAX_TEXT_CHARS; i++) {
+            char c = i < length ? text.charAt(i) : '\n';
+            if (c == '\n' || c == '\r') {
+                String value = line.toString().trim();
+                if (!value.isEmpty() && seen.add(value)) {
+                    if (clean.length() > 0) clean.append('\n');
+                    clean.append(value);
+                }
+                line.setLength(0);
+            } else if (Character.isWhitespace(c)) {
+                if (line.length() > 0 && line.charAt(line.length() - 1) != ' ') {
+                    line.append(' ');
+                }
+            } else {
+                line.append(c);
+            }
+        }
+        if (clean.length() > MAX_TEXT_CHARS) {
+            clean.setLength(MAX_TEXT_CHARS);
+        }
+        return clean.toString().trim();
+    }
+
+    // 64-bit FNV-1a
+    private static long hash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
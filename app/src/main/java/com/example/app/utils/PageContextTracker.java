@@ -0,0 +1,68 @@
+package com.example.app.utils;
+
+import android.webkit.WebView;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the top-level page of every WebView, so requests intercepted on
+ * WebView's background threads can be related to the page that made them.
+ *
+ * Written from the main thread when a navigation starts and read from the
+ * interception threads; ConcurrentHashMap reads do not lock.
+ */
+public class PageContextTracker {
+    private final ConcurrentHashMap<WebView, PageContext> contexts = new ConcurrentHashMap<>();
+
+    /**
+     * Record the top-level URL a WebView is now showing.
+     */
+    public void update(WebView view, String url) {
+        if (view == null || url == null) {
+            return;
+        }
+        String lowerUrl = url.toLowerCase();
+        int hostStart = AdBlocker.findHostStart(lowerUrl);
+        if (hostStart < 0) {
+            contexts.remove(view);
+            return;
+        }
+        String host = lowerUrl.substring(hostStart, AdBlocker.findHostEnd(lowerUrl, hostStart));
+        PageContext current = contexts.get(view);
+        if (current == null || !current.host.equals(host)) {
+            contexts.put(view, new PageContext(host));
+        }
+    }
+
+    public PageContext get(WebView view) {
+        return view != null ? contexts.get(view) : null;
+    }
+
+    public void remove(WebView view) {
+        if (view != null) {
+            contexts.remove(view);
+        }
+    }
+
+    public static final class PageContext {
+        public final String host;
+        public final String registrableDomain;
+        /** Hash of the full host, which {@code $domain=} rules match, for mixing into cache keys. */
+        public final long hostHash;
+
+        PageContext(String host) {
+            this.host = host;
+            this.registrableDomain = DomainUtils.getRegistrableDomain(host);
+            this.hostHash = VerdictCache.hashUrl(host);
+        }
+
+        /**
+         * Whether the host at {@code [hostStart, hostEnd)} of a URL belongs to
+         * the same site as the page.
+         */
+        public boolean isFirstParty(String url, int hostStart, int hostEnd) {
+            return hostStart < hostEnd
+                    && DomainUtils.isSameOrSubdomain(url, hostStart, hostEnd, registrableDomain);
+        }
+    }
+}
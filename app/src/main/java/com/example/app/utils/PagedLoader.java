@@ -0,0 +1,138 @@
+package com.example.app.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads a long list a page at a time as it is scrolled.
+ *
+ * Each page is read on a background thread starting after the last item of
+ * the previous page (keyset pagination), so a page costs the same however
+ * far down the list it is, and only what was scrolled past is in memory.
+ * Pages are handed to the listener on the main thread. Methods other than
+ * the page source are called on the main thread.
+ */
+public class PagedLoader<T> {
+    private static final String TAG = "PagedLoader";
+    // Start loading when this many items are left below the screen
+    private static final int PREFETCH_DISTANCE = 15;
+
+    public interface PageSource<T> {
+        /**
+         * Up to {@code limit} items following {@code last}, or the first
+         * items when {@code last} is null. Runs on a background thread.
+         */
+        List<T> loadPage(T last, int limit);
+    }
+
+    public interface Listener<T> {
+        /**
+         * {@code first} is true for the first page after {@link #reload}.
+         */
+        void onPageLoaded(List<T> items, boolean first);
+    }
+
+    private final PageSource<T> source;
+    private final Listener<T> listener;
+    private final int pageSize;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private T last;
+    private boolean loading;
+    private boolean exhausted = true;
+    // Incremented on reload and cancel so that pages still loading are dropped
+    private int generation;
+
+    public PagedLoader(int pageSize, PageSource<T> source, Listener<T> listener) {
+        this.pageSize = pageSize;
+        this.source = source;
+        this.listener = listener;
+    }
+
+    /**
+     * Load the next page whenever the list is scrolled near its end.
+     */
+    public void attach(RecyclerView recyclerView) {
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView view, int dx, int dy) {
+                RecyclerView.LayoutManager layoutManager = view.getLayoutManager();
+                RecyclerView.Adapter<?> adapter = view.getAdapter();
+                if (dy <= 0 || loading || exhausted || adapter == null
+                        || !(layoutManager instanceof LinearLayoutManager)) {
+                    return;
+                }
+                int lastVisible = ((LinearLayoutManager) layoutManager).findLastVisibleItemPosition();
+                if (lastVisible >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+                    loadNext(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Start over from the first page.
+     */
+    public void reload() {
+        generation++;
+        last = null;
+        exhausted = false;
+        loadNext(true);
+    }
+
+    /**
+     * Stop loading pages until the next {@link #reload}.
+     */
+    public void cancel() {
+        generation++;
+        loading = false;
+        exhausted = true;
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private void loadNext(boolean first) {
+        loading = true;
+        int requested = generation;
+        T after = last;
+        executor.execute(() -> {
+            List<T> page;
+            try {
+                page = source.loadPage(after, pageSize);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error loading page", e);
+                page = null;
+            }
+            List<T> items = page;
+            mainHandler.post(() -> {
+                if (requested != generation) {
+                    return;
+                }
+                loading = false;
+                if (items == null) {
+                    exhausted = true;
+                    return;
+                }
+                if (items.size() < pageSize) {
+                    exhausted = true;
+                }
+                if (!items.isEmpty()) {
+                    last = items.get(items.size() - 1);
+                }
+                listener.onPageLoaded(items, first);
+            });
+        });
+    }
+}
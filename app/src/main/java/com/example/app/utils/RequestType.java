@@ -0,0 +1,243 @@
+package com.example.app.utils;
+
+import android.webkit.WebResourceRequest;
+
+import java.util.Map;
+
+/**
+ * Resource type bits used by filter rule options such as {@code $script},
+ * and classification of WebView requests into those types.
+ */
+public final class RequestType {
+    public static final int DOCUMENT = 1;
+    public static final int SUBDOCUMENT = 1 << 1;
+    public static final int SCRIPT = 1 << 2;
+    public static final int IMAGE = 1 << 3;
+    public static final int STYLESHEET = 1 << 4;
+    public static final int XHR = 1 << 5;
+    public static final int FONT = 1 << 6;
+    public static final int MEDIA = 1 << 7;
+    public static final int OTHER = 1 << 8;
+
+    /** Number of type bits. */
+    public static final int COUNT = 9;
+    public static final int ALL = (1 << COUNT) - 1;
+    /** Default for rules without type options: everything but top-level documents. */
+    public static final int ALL_SUBRESOURCES = ALL & ~DOCUMENT;
+
+    private RequestType() {}
+
+    public static int classify(WebResourceRequest request, String lowerUrl) {
+        return classify(request.isForMainFrame(), request.getMethod(),
+                request.getRequestHeaders(), lowerUrl);
+    }
+
+    /**
+     * Classify a request from what WebView tells about it: main-frame
+     * navigations are documents; otherwise Sec-Fetch-Dest is authoritative
+     * when present, then the Accept header, then the method and finally the
+     * file extension.
+     */
+    public static int classify(boolean isForMainFrame, String method,
+                               Map<String, String> headers, String lowerUrl) {
+        if (isForMainFrame) {
+            return DOCUMENT;
+        }
+        int type = fromFetchDest(header(headers, "Sec-Fetch-Dest"));
+        if (type != 0) {
+            return type;
+        }
+        type = fromAccept(header(headers, "Accept"));
+        if (type != 0) {
+            return type;
+        }
+        type = guessFromUrl(lowerUrl);
+        if (type == OTHER && method != null && !method.equalsIgnoreCase("GET")) {
+            // Subresource POSTs and the like come from fetch() or XMLHttpRequest
+            return XHR;
+        }
+        return type;
+    }
+
+    private static String header(Map<String, String> headers, String name) {
+        if (headers == null || headers.isEmpty()) {
+            return null;
+        }
+        String value = headers.get(name);
+        if (value != null) {
+            return value;
+        }
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static int fromFetchDest(String dest) {
+        if (dest == null) {
+            return 0;
+        }
+        switch (dest.trim().toLowerCase()) {
+            case "document":
+            case "iframe":
+            case "frame":
+                return SUBDOCUMENT;
+            case "script":
+            case "worker":
+            case "sharedworker":
+            case "serviceworker":
+            case "audioworklet":
+            case "paintworklet":
+                return SCRIPT;
+            case "style":
+                return STYLESHEET;
+            case "image":
+                return IMAGE;
+            case "font":
+                return FONT;
+            case "audio":
+            case "video":
+            case "track":
+                return MEDIA;
+            case "empty":
+                return XHR;
+            case "object":
+            case "embed":
+            case "report":
+                return OTHER;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Type implied by the most specific media range of an Accept header. The
+     * generic {@code *}{@code /*} that scripts and fetches send says nothing.
+     */
+    private static int fromAccept(String accept) {
+        if (accept == null) {
+            return 0;
+        }
+        String value = accept.trim().toLowerCase();
+        if (value.startsWith("text/css")) {
+            return STYLESHEET;
+        }
+        if (value.startsWith("image/")) {
+            return IMAGE;
+        }
+        if (value.startsWith("text/html") || value.startsWith("application/xhtml")) {
+            return SUBDOCUMENT;
+        }
+        if (value.startsWith("application/json") || value.startsWith("text/event-stream")) {
+            return XHR;
+        }
+        if (value.startsWith("video/") || value.startsWith("audio/")) {
+            return MEDIA;
+        }
+        if (value.startsWith("application/font") || value.startsWith("font/")) {
+            return FONT;
+        }
+        return 0;
+    }
+
+    /**
+     * Index of a single type bit, 0 to {@link #COUNT} - 1.
+     */
+    static int indexOf(int type) {
+        return Integer.numberOfTrailingZeros(type);
+    }
+
+    /**
+     * Guess the type of a request from the file extension of its URL.
+     */
+    public static int guessFromUrl(String lowerUrl) {
+        int end = lowerUrl.length();
+        for (int i = 0; i < end; i++) {
+            char c = lowerUrl.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        int dot = lowerUrl.lastIndexOf('.', end - 1);
+        int slash = lowerUrl.lastIndexOf('/', end - 1);
+        if (dot < 0 || dot < slash) {
+            return OTHER;
+        }
+        String extension = lowerUrl.substring(dot + 1, end);
+        switch (extension) {
+            case "js":
+            case "mjs":
+                return SCRIPT;
+            case "css":
+                return STYLESHEET;
+            case "png":
+            case "jpg":
+            case "jpeg":
+            case "gif":
+            case "webp":
+            case "svg":
+            case "ico":
+            case "bmp":
+            case "avif":
+                return IMAGE;
+            case "woff":
+            case "woff2":
+            case "ttf":
+            case "otf":
+            case "eot":
+                return FONT;
+            case "mp4":
+            case "webm":
+            case "mp3":
+            case "m4a":
+            case "ogg":
+            case "m3u8":
+            case "ts":
+                return MEDIA;
+            case "html":
+            case "htm":
+                return SUBDOCUMENT;
+            case "json":
+                return XHR;
+            default:
+                return OTHER;
+        }
+    }
+
+    /**
+     * Map an Adblock Plus type option name to its bit, or 0 if unknown.
+     */
+    public static int fromOptionName(String name) {
+        switch (name) {
+            case "document":
+                return DOCUMENT;
+            case "subdocument":
+            case "frame":
+                return SUBDOCUMENT;
+            case "script":
+                return SCRIPT;
+            case "image":
+                return IMAGE;
+            case "stylesheet":
+            case "css":
+                return STYLESHEET;
+            case "xmlhttprequest":
+            case "xhr":
+                return XHR;
+            case "font":
+                return FONT;
+            case "media":
+                return MEDIA;
+            case "object":
+            case "ping":
+            case "websocket":
+            case "other":
+                return OTHER;
+            default:
+                return 0;
+        }
+    }
+}
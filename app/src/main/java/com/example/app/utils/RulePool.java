@@ -0,0 +1,73 @@
+package com.example.app.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The source text of every rule in a snapshot, decoded into
+ * {@link NetworkFilter}s on first use.
+ *
+ * Each rule has a record of two ints: the offset of its UTF-8 text in the
+ * string pool and its length, shifted left by two with the low bits telling
+ * Adblock Plus rules, regex rules, script-only regex rules and element hiding
+ * selectors apart. Most rules are never a candidate for any request, so most
+ * are never decoded.
+ */
+public class RulePool {
+    static final int KIND_FILTER = 0;
+    static final int KIND_REGEX = 1;
+    static final int KIND_SCRIPT_REGEX = 2;
+    static final int KIND_SELECTOR = 3;
+    static final int KIND_BITS = 2;
+
+    private final IntBuffer records;
+    private final ByteBuffer strings;
+    private final AtomicReferenceArray<NetworkFilter> decoded;
+
+    RulePool(IntBuffer records, ByteBuffer strings) {
+        this.records = records;
+        this.strings = strings;
+        this.decoded = new AtomicReferenceArray<>(records.limit() / 2);
+    }
+
+    NetworkFilter get(int id) {
+        NetworkFilter filter = decoded.get(id);
+        if (filter == null) {
+            filter = decode(id);
+            decoded.lazySet(id, filter);
+        }
+        return filter;
+    }
+
+    /**
+     * The rule text, decoded on every call.
+     */
+    String getSource(int id) {
+        int offset = records.get(id * 2);
+        byte[] bytes = new byte[records.get(id * 2 + 1) >>> KIND_BITS];
+        ByteBuffer view = strings.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private NetworkFilter decode(int id) {
+        String source = getSource(id);
+        switch (records.get(id * 2 + 1) & ((1 << KIND_BITS) - 1)) {
+            case KIND_REGEX:
+                return NetworkFilter.fromRegex(source);
+            case KIND_SCRIPT_REGEX:
+                return NetworkFilter.fromRegex(source, RequestType.SCRIPT);
+            case KIND_SELECTOR:
+                return null;
+            default:
+                return NetworkFilter.parse(source);
+        }
+    }
+
+    public int size() {
+        return decoded.length();
+    }
+}
@@ -38,7 +38,7 @@ public class SearchSuggestionProvider {
     
     public SearchSuggestionProvider(Context context) {
         this.context = context;
-        this.databaseHelper = new DatabaseHelper(context);
+        this.databaseHelper = DatabaseHelper.getInstance(context);
         this.executorService = Executors.newFixedThreadPool(2); // Use fixed thread pool for better resource management
         this.mainHandler = new Handler(Looper.getMainLooper());
     }
@@ -217,8 +217,5 @@ public class SearchSuggestionProvider {
                 executorService.shutdownNow();
             }
         }
-        if (databaseHelper != null) {
-            databaseHelper.close();
-        }
     }
 }
@@ -0,0 +1,147 @@
+package com.example.app.utils;
+
+import android.webkit.WebResourceResponse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stand-in bodies for blocked requests.
+ *
+ * An empty answer of the right type keeps pages from logging errors, and
+ * no-op versions of common analytics and ad libraries define the globals
+ * pages call, like {@code ga()} or {@code googletag.cmd.push()}, so they
+ * neither throw nor poll for a library that never arrives. All bodies are
+ * allocated once and served with a cache lifetime, so WebView does not ask
+ * again for the same URL during the session.
+ */
+public final class SurrogateResources {
+    private static final String CACHE_CONTROL = "public, max-age=86400";
+
+    // Google Analytics (analytics.js): run queued commands and hit callbacks
+    private static final byte[] ANALYTICS_JS = bytes(
+        "(function(){var noop=function(){};"
+        + "var tracker={get:noop,set:noop,send:noop};"
+        + "var ga=function(){var a=arguments[arguments.length-1];"
+        + "if(typeof a==='function'){try{a(tracker);}catch(e){}}"
+        + "else if(a&&typeof a.hitCallback==='function'){try{a.hitCallback();}catch(e){}}};"
+        + "ga.create=function(){return tracker;};ga.getByName=function(){return tracker;};"
+        + "ga.getAll=function(){return [tracker];};ga.remove=noop;ga.loaded=true;"
+        + "var name=window.GoogleAnalyticsObject||'ga';var queue=window[name]&&window[name].q;"
+        + "window[name]=ga;if(Array.isArray(queue)){for(var i=0;i<queue.length;i++){"
+        + "try{ga.apply(null,queue[i]);}catch(e){}}}})();");
+
+    // gtag.js and Google Tag Manager: answer eventCallbacks pushed to dataLayer
+    private static final byte[] TAG_MANAGER_JS = bytes(
+        "(function(){var layer=window.dataLayer=window.dataLayer||[];"
+        + "var run=function(e){if(e&&typeof e.eventCallback==='function'){"
+        + "try{e.eventCallback();}catch(x){}}};"
+        + "for(var i=0;i<layer.length;i++){run(layer[i]);}"
+        + "layer.push=function(){for(var i=0;i<arguments.length;i++){run(arguments[i]);}"
+        + "return layer.length;};"
+        + "window.google_tag_manager=window.google_tag_manager||{};})();");
+
+    // Google Publisher Tag (gpt.js): chainable slots and services, run googletag.cmd
+    private static final byte[] GOOGLETAG_JS = bytes(
+        "(function(){var self=function(){return this;};var none=function(){return [];};"
+        + "var slot={addService:self,setTargeting:self,clearTargeting:self,"
+        + "defineSizeMapping:self,setCollapseEmptyDiv:self,setClickUrl:self,"
+        + "getSlotElementId:function(){return '';},getTargeting:none,getTargetingKeys:none};"
+        + "var service={addEventListener:self,removeEventListener:self,enableSingleRequest:self,"
+        + "enableLazyLoad:self,setTargeting:self,clearTargeting:self,collapseEmptyDivs:self,"
+        + "disableInitialLoad:self,enableAsyncRendering:self,refresh:self,clear:self,"
+        + "setPrivacySettings:self,setRequestNonPersonalizedAds:self,setCentering:self,"
+        + "updateCorrelator:self,getSlots:none};"
+        + "var gt=window.googletag=window.googletag||{};var queue=gt.cmd||[];"
+        + "gt.apiReady=true;gt.pubadsReady=true;"
+        + "gt.pubads=function(){return service;};gt.companionAds=gt.pubads;gt.content=gt.pubads;"
+        + "gt.defineSlot=function(){return slot;};gt.defineOutOfPageSlot=gt.defineSlot;"
+        + "gt.display=self;gt.enableServices=self;gt.destroySlots=self;"
+        + "gt.sizeMapping=function(){var b={addSize:function(){return b;},build:none};return b;};"
+        + "gt.cmd={push:function(){for(var i=0;i<arguments.length;i++){"
+        + "try{arguments[i]();}catch(e){}}return 0;}};"
+        + "for(var i=0;i<queue.length;i++){try{queue[i]();}catch(e){}}})();");
+
+    // AdSense (adsbygoogle.js)
+    private static final byte[] ADSBYGOOGLE_JS = bytes(
+        "(function(){window.adsbygoogle={loaded:true,push:function(){}};})();");
+
+    private static final byte[] EMPTY_JS = bytes("");
+    private static final byte[] EMPTY_CSS = bytes("");
+    private static final byte[] EMPTY_HTML = bytes("<!doctype html><html><body></body></html>");
+    private static final byte[] EMPTY_TEXT = bytes("");
+
+    // GIF89a, 1x1, one transparent colour
+    private static final byte[] TRANSPARENT_GIF = {
+        0x47, 0x49, 0x46, 0x38, 0x39, 0x61, 0x01, 0x00, 0x01, 0x00, (byte) 0x80, 0x00, 0x00,
+        0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x21, (byte) 0xF9, 0x04, 0x01, 0x00, 0x00, 0x00,
+        0x00, 0x2C, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00, 0x01, 0x00, 0x00, 0x02, 0x02, 0x44,
+        0x01, 0x00, 0x3B
+    };
+
+    // URL fragments of libraries with a no-op version, checked in order
+    private static final String[] SCRIPT_URLS = {
+        "google-analytics.com/analytics.js",
+        "googletagmanager.com/gtag/js",
+        "googletagmanager.com/gtm.js",
+        "googletagservices.com/tag/js/gpt.js",
+        "securepubads.g.doubleclick.net/tag/js/gpt.js",
+        "pagead2.googlesyndication.com/pagead/js/adsbygoogle.js"
+    };
+    private static final byte[][] SCRIPT_BODIES = {
+        ANALYTICS_JS, TAG_MANAGER_JS, TAG_MANAGER_JS, GOOGLETAG_JS, GOOGLETAG_JS, ADSBYGOOGLE_JS
+    };
+
+    // Shared and never modified; WebView only reads response headers
+    private static final Map<String, String> HEADERS = createHeaders();
+
+    private SurrogateResources() {}
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> createHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Cache-Control", CACHE_CONTROL);
+        headers.put("Access-Control-Allow-Origin", "*");
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Response standing in for a blocked request of a type from
+     * {@link RequestType}; {@code lowerUrl} picks a library shim for scripts.
+     */
+    public static WebResourceResponse createResponse(String lowerUrl, int type) {
+        switch (type) {
+            case RequestType.SCRIPT:
+                return create("application/javascript", getScript(lowerUrl));
+            case RequestType.IMAGE:
+                return create("image/gif", TRANSPARENT_GIF);
+            case RequestType.STYLESHEET:
+                return create("text/css", EMPTY_CSS);
+            case RequestType.DOCUMENT:
+            case RequestType.SUBDOCUMENT:
+                return create("text/html", EMPTY_HTML);
+            default:
+                return create("text/plain", EMPTY_TEXT);
+        }
+    }
+
+    private static byte[] getScript(String lowerUrl) {
+        for (int i = 0; i < SCRIPT_URLS.length; i++) {
+            if (lowerUrl.contains(SCRIPT_URLS[i])) {
+                return SCRIPT_BODIES[i];
+            }
+        }
+        return EMPTY_JS;
+    }
+
+    private static WebResourceResponse create(String mimeType, byte[] body) {
+        return new WebResourceResponse(mimeType, "utf-8", 200, "OK", HEADERS,
+                new ByteArrayInputStream(body));
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.app.utils;
+
+import java.nio.IntBuffer;
+
+/**
+ * {@link NetworkFilterIndex} partitioned by request type.
+ *
+ * Rules that apply to every subresource type live in one generic partition.
+ * Rules limited to some types, like {@code $script} or {@code $image}, are
+ * filed in the partition of each of their types only, so an image request
+ * never evaluates a script rule. A request checks its own type's partition
+ * and the generic one.
+ */
+public class TypedFilterIndex {
+    /** Generic partition plus one per type. */
+    static final int PARTITION_COUNT = RequestType.COUNT + 1;
+
+    private final NetworkFilterIndex generic;
+    private final NetworkFilterIndex[] byType;
+    private final int size;
+
+    TypedFilterIndex(NetworkFilterIndex[] partitions, int size) {
+        this.generic = partitions[0];
+        this.byType = new NetworkFilterIndex[RequestType.COUNT];
+        System.arraycopy(partitions, 1, byType, 0, RequestType.COUNT);
+        this.size = size;
+    }
+
+    /**
+     * Return the first filter matching the request, or null. The request
+     * type must be a single type bit.
+     */
+    public NetworkFilter findMatch(FilterRequest request) {
+        return findMatch(request, null);
+    }
+
+    /**
+     * Like {@link #findMatch(FilterRequest)}, timing every candidate rule
+     * evaluated if {@code timer} is not null.
+     */
+    public NetworkFilter findMatch(FilterRequest request, FilterProfiler timer) {
+        NetworkFilter match = byType[RequestType.indexOf(request.type)].findMatch(request, timer);
+        return match != null ? match : generic.findMatch(request, timer);
+    }
+
+    public boolean matches(FilterRequest request) {
+        return findMatch(request) != null;
+    }
+
+    /**
+     * Number of distinct rules; a rule for several types counts once.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Read the partitions laid out back to back from {@code offset}; returns
+     * the index and leaves the end offset in {@code end[0]}.
+     */
+    static TypedFilterIndex read(IntBuffer buffer, int offset, int size, RulePool rules, int[] end) {
+        NetworkFilterIndex[] partitions = new NetworkFilterIndex[PARTITION_COUNT];
+        for (int i = 0; i < PARTITION_COUNT; i++) {
+            int length = NetworkFilterIndex.sectionLength(buffer, offset);
+            IntBuffer view = buffer.duplicate();
+            view.limit(offset + length);
+            view.position(offset);
+            partitions[i] = new NetworkFilterIndex(view.slice(), rules);
+            offset += length;
+        }
+        end[0] = offset;
+        return new TypedFilterIndex(partitions, size);
+    }
+
+    public static class Builder {
+        private final NetworkFilterIndex.Builder[] partitions =
+                new NetworkFilterIndex.Builder[PARTITION_COUNT];
+        private int size;
+
+        public Builder() {
+            for (int i = 0; i < PARTITION_COUNT; i++) {
+                partitions[i] = new NetworkFilterIndex.Builder();
+            }
+        }
+
+        public Builder add(NetworkFilter filter, int id) {
+            if (filter == null) {
+                return this;
+            }
+            size++;
+            int typeMask = filter.getTypeMask();
+            if ((typeMask & RequestType.ALL_SUBRESOURCES) == RequestType.ALL_SUBRESOURCES) {
+                partitions[0].add(filter, id);
+                return this;
+            }
+            for (int i = 0; i < RequestType.COUNT; i++) {
+                if ((typeMask & (1 << i)) != 0) {
+                    partitions[i + 1].add(filter, id);
+                }
+            }
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Lay out all partitions as consecutive snapshot sections.
+         */
+        int[][] build() {
+            int[][] sections = new int[PARTITION_COUNT][];
+            for (int i = 0; i < PARTITION_COUNT; i++) {
+                sections[i] = partitions[i].build();
+            }
+            return sections;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.example.app.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of block/allow verdicts keyed by a 64-bit URL hash.
+ *
+ * Each segment follows the W-TinyLFU design: new entries enter a small LRU
+ * window (1% of capacity); entries leaving the window compete with the
+ * least recently used entry of the main space, and whichever a count-min
+ * frequency sketch has seen more often stays. The main space is a segmented
+ * LRU with probation and protected queues, so entries hit again after
+ * admission are kept longer than one-off URLs. The sketch is periodically
+ * halved so old popularity fades.
+ *
+ * Keys and values live in primitive arrays; lookups and inserts do not
+ * allocate. The cache is split into independently locked segments.
+ */
+public class VerdictCache {
+    /** Returned by {@link #get(long)} when the key is not cached. */
+    public static final int MISS = -1;
+
+    private static final int SEGMENT_COUNT = 16;
+    private static final int MIN_SEGMENT_CAPACITY = 8;
+
+    private final Segment[] segments;
+    private final int maximumSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public VerdictCache(int maximumSize) {
+        int segmentCount = SEGMENT_COUNT;
+        while (segmentCount > 1 && maximumSize / segmentCount < MIN_SEGMENT_CAPACITY) {
+            segmentCount >>= 1;
+        }
+        int segmentCapacity = Math.max(MIN_SEGMENT_CAPACITY, maximumSize / segmentCount);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+        this.maximumSize = segmentCapacity * segmentCount;
+    }
+
+    /**
+     * Return the cached verdict for the key, or {@link #MISS}.
+     */
+    public int get(long key) {
+        int verdict = segmentFor(key).get(key);
+        if (verdict == MISS) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return verdict;
+    }
+
+    /**
+     * Cache a verdict in the range 0..127.
+     */
+    public void put(long key, int verdict) {
+        if (segmentFor(key).put(key, (byte) verdict)) {
+            evictions.increment();
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a URL, case-insensitive and ignoring the fragment,
+     * which never reaches the network.
+     */
+    public static long hashUrl(String url) {
+        long hash = 0xcbf29ce484222325L;
+        int length = url.length();
+        for (int i = 0; i < length; i++) {
+            char c = url.charAt(i);
+            if (c == '#') {
+                break;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            hash ^= c;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private Segment segmentFor(long key) {
+        int h = spread(key);
+        return segments[(h >>> 16) & (segments.length - 1)];
+    }
+
+    static int spread(long key) {
+        int h = (int) (key ^ (key >>> 32));
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        return (h >>> 16) ^ h;
+    }
+
+    private static final class Segment {
+        private static final int WINDOW = 0;
+        private static final int PROBATION = 1;
+        private static final int PROTECTED = 2;
+        private static final int NONE = -1;
+
+        private final int windowCapacity;
+        private final int mainCapacity;
+        private final int protectedCapacity;
+
+        // Node storage; one spare slot holds a new entry until eviction runs
+        private final long[] keys;
+        private final byte[] values;
+        private final byte[] queues;
+        private final int[] prev;
+        private final int[] next;
+        private final int[] chain;
+
+        private final int[] table;
+        private final int[] heads = new int[3];
+        private final int[] tails = new int[3];
+        private final int[] counts = new int[3];
+        private final FrequencySketch sketch;
+        private int freeHead;
+
+        Segment(int capacity) {
+            this.windowCapacity = Math.max(1, capacity / 100);
+            this.mainCapacity = capacity - windowCapacity;
+            this.protectedCapacity = mainCapacity * 4 / 5;
+
+            int nodes = capacity + 1;
+            keys = new long[nodes];
+            values = new byte[nodes];
+            queues = new byte[nodes];
+            prev = new int[nodes];
+            next = new int[nodes];
+            chain = new int[nodes];
+
+            int tableSize = 1;
+            while (tableSize < capacity * 2) {
+                tableSize <<= 1;
+            }
+            table = new int[tableSize];
+            sketch = new FrequencySketch(capacity);
+            reset();
+        }
+
+        synchronized int get(long key) {
+            sketch.increment(key);
+            int node = find(key);
+            if (node == NONE) {
+                return MISS;
+            }
+            onHit(node);
+            return values[node];
+        }
+
+        /**
+         * Insert or update an entry; returns true if another entry was evicted.
+         */
+        synchronized boolean put(long key, byte value) {
+            int node = find(key);
+            if (node != NONE) {
+                values[node] = value;
+                return false;
+            }
+            node = freeHead;
+            freeHead = next[node];
+            keys[node] = key;
+            values[node] = value;
+            int slot = slotFor(key);
+            chain[node] = table[slot] - 1;
+            table[slot] = node + 1;
+            link(node, WINDOW);
+            return evictIfNeeded();
+        }
+
+        synchronized void clear() {
+            reset();
+        }
+
+        synchronized int size() {
+            return counts[WINDOW] + counts[PROBATION] + counts[PROTECTED];
+        }
+
+        private void reset() {
+            Arrays.fill(table, 0);
+            for (int i = 0; i < 3; i++) {
+                heads[i] = NONE;
+                tails[i] = NONE;
+                counts[i] = 0;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                next[i] = i + 1 < keys.length ? i + 1 : NONE;
+            }
+            freeHead = 0;
+            sketch.clear();
+        }
+
+        private void onHit(int node) {
+            int queue = queues[node];
+            if (queue == PROBATION) {
+                unlink(node);
+                link(node, PROTECTED);
+                if (counts[PROTECTED] > protectedCapacity) {
+                    int demoted = heads[PROTECTED];
+                    unlink(demoted);
+                    link(demoted, PROBATION);
+                }
+            } else {
+                // Move to the most recently used end of its queue
+                unlink(node);
+                link(node, queue);
+            }
+        }
+
+        private boolean evictIfNeeded() {
+            if (counts[WINDOW] <= windowCapacity) {
+                return false;
+            }
+            int candidate = heads[WINDOW];
+            unlink(candidate);
+            link(candidate, PROBATION);
+            if (counts[PROBATION] + counts[PROTECTED] <= mainCapacity) {
+                return false;
+            }
+            int victim = heads[PROBATION];
+            if (sketch.frequency(keys[candidate]) > sketch.frequency(keys[victim])) {
+                remove(victim);
+            } else {
+                remove(candidate);
+            }
+            return true;
+        }
+
+        private int find(long key) {
+            int node = table[slotFor(key)] - 1;
+            while (node != NONE) {
+                if (keys[node] == key) {
+                    return node;
+                }
+                node = chain[node];
+            }
+            return NONE;
+        }
+
+        private void remove(int node) {
+            int slot = slotFor(keys[node]);
+            int current = table[slot] - 1;
+            int previous = NONE;
+            while (current != node) {
+                previous = current;
+                current = chain[current];
+            }
+            if (previous == NONE) {
+                table[slot] = chain[node] + 1;
+            } else {
+                chain[previous] = chain[node];
+            }
+            unlink(node);
+            next[node] = freeHead;
+            freeHead = node;
+        }
+
+        private int slotFor(long key) {
+            return spread(key) & (table.length - 1);
+        }
+
+        private void link(int node, int queue) {
+            queues[node] = (byte) queue;
+            prev[node] = tails[queue];
+            next[node] = NONE;
+            if (tails[queue] != NONE) {
+                next[tails[queue]] = node;
+            } else {
+                heads[queue] = node;
+            }
+            tails[queue] = node;
+            counts[queue]++;
+        }
+
+        private void unlink(int node) {
+            int queue = queues[node];
+            if (prev[node] != NONE) {
+                next[prev[node]] = next[node];
+            } else {
+                heads[queue] = next[node];
+            }
+            if (next[node] != NONE) {
+                prev[next[node]] = prev[node];
+            } else {
+                tails[queue] = prev[node];
+            }
+            counts[queue]--;
+        }
+    }
+
+    /**
+     * Count-min sketch with four 4-bit counters per key, packed sixteen to a
+     * long. Counters are halved after ten times the capacity increments.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int size = 1;
+            while (size < capacity) {
+                size <<= 1;
+            }
+            table = new long[Math.max(4, size)];
+            sampleSize = 10 * Math.max(capacity, 1);
+        }
+
+        void increment(long key) {
+            int hash = spread(key);
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                added |= incrementAt(indexOf(hash, i), start + i);
+            }
+            if (added && ++additions >= sampleSize) {
+                halve();
+            }
+        }
+
+        int frequency(long key) {
+            int hash = spread(key);
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int counter = (int) ((table[indexOf(hash, i)] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, counter);
+            }
+            return frequency;
+        }
+
+        void clear() {
+            Arrays.fill(table, 0L);
+            additions = 0;
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return ((int) h) & (table.length - 1);
+        }
+
+        private boolean incrementAt(int index, int counter) {
+            int offset = counter << 2;
+            long mask = 0xfL << offset;
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << offset;
+                return true;
+            }
+            return false;
+        }
+
+        private void halve() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions >>>= 1;
+        }
+    }
+}
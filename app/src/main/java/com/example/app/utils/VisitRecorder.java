@@ -0,0 +1,186 @@
+package com.example.app.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.app.database.DatabaseHelper;
+import com.example.app.models.HistoryItem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes history visits on a background thread.
+ *
+ * Each tab's latest visit is held back for {@link #REDIRECT_WINDOW_MS}
+ * before it is written. A page the WebView reached by redirect within
+ * that time replaces it, and one to the same page (a reload, or a change
+ * of the URL fragment) only refreshes it; a page the user navigated to
+ * always gets a visit of its own. After a visit is written, a return to
+ * the same page within {@link #RELOAD_WINDOW_MS} updates that row instead
+ * of adding one. Visits are written in batches, one transaction each.
+ *
+ * All state belongs to the recorder thread; callers only post to it.
+ */
+public class VisitRecorder {
+    private static final String TAG = "VisitRecorder";
+    // A redirect finishing this soon after the previous page in a tab replaces it
+    private static final long REDIRECT_WINDOW_MS = 2000;
+    // A repeat visit to the same page this soon updates the earlier row
+    private static final long RELOAD_WINDOW_MS = 60 * 1000;
+    private static final long FLUSH_DELAY_MS = REDIRECT_WINDOW_MS + 500;
+
+    private static VisitRecorder instance;
+
+    private final DatabaseHelper databaseHelper;
+    private final Handler handler;
+    // Recorder thread only
+    private final Map<Object, Visit> pending = new HashMap<>();
+    private final Map<Object, Visit> lastWritten = new HashMap<>();
+    private final List<Visit> ready = new ArrayList<>();
+    private final Runnable flushRunnable = () -> flush(false);
+    private boolean flushScheduled;
+
+    private VisitRecorder(Context context) {
+        databaseHelper = DatabaseHelper.getInstance(context);
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    public static synchronized VisitRecorder getInstance(Context context) {
+        if (instance == null) {
+            instance = new VisitRecorder(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Record that {@code tab}, any object identifying the tab, finished
+     * loading {@code url}. {@code redirect} says the WebView got there by a
+     * redirect rather than by the user navigating.
+     */
+    public void recordVisit(Object tab, String url, String title, boolean redirect) {
+        if (tab == null || url == null) return;
+        long timestamp = System.currentTimeMillis();
+        long elapsed = SystemClock.elapsedRealtime();
+        handler.post(() -> addVisit(tab, url, title, redirect, timestamp, elapsed));
+    }
+
+    /**
+     * Write the tab's pending visit and forget the tab.
+     */
+    public void removeTab(Object tab) {
+        if (tab == null) return;
+        handler.post(() -> {
+            Visit visit = pending.remove(tab);
+            if (visit != null) {
+                ready.add(visit);
+            }
+            lastWritten.remove(tab);
+            scheduleFlush();
+        });
+    }
+
+    /**
+     * Write every pending visit now, e.g. when the app goes to the background.
+     */
+    public void flush() {
+        handler.post(() -> flush(true));
+    }
+
+    private void addVisit(Object tab, String url, String title, boolean redirect,
+                          long timestamp, long elapsed) {
+        String page = stripFragment(url);
+        Visit visit = pending.get(tab);
+        if (visit != null) {
+            // A written row (a pending reload) never moves to another page
+            if (!visit.page.equals(page) && (!redirect || visit.item.getId() > 0
+                    || elapsed - visit.elapsed >= REDIRECT_WINDOW_MS)) {
+                // A new page; the pending one is final
+                ready.add(visit);
+                visit = null;
+            }
+        } else {
+            Visit written = lastWritten.get(tab);
+            if (written != null && written.page.equals(page)
+                    && elapsed - written.elapsed < RELOAD_WINDOW_MS) {
+                // A reload: update the row already written
+                visit = written;
+            }
+        }
+        if (visit == null) {
+            visit = new Visit(new HistoryItem());
+        }
+        visit.page = page;
+        visit.elapsed = elapsed;
+        visit.item.setUrl(url);
+        visit.item.setTitle(title);
+        visit.item.setTimestamp(timestamp);
+        pending.put(tab, visit);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, FLUSH_DELAY_MS);
+        }
+    }
+
+    private void flush(boolean all) {
+        handler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+
+        List<Visit> batch = new ArrayList<>(ready);
+        ready.clear();
+        long now = SystemClock.elapsedRealtime();
+        Iterator<Map.Entry<Object, Visit>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Object, Visit> entry = iterator.next();
+            Visit visit = entry.getValue();
+            if (all || now - visit.elapsed >= REDIRECT_WINDOW_MS) {
+                iterator.remove();
+                batch.add(visit);
+                lastWritten.put(entry.getKey(), visit);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            List<HistoryItem> items = new ArrayList<>(batch.size());
+            for (Visit visit : batch) {
+                items.add(visit.item);
+            }
+            try {
+                databaseHelper.saveHistoryItems(items);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error writing history", e);
+            }
+        }
+        if (!pending.isEmpty()) {
+            scheduleFlush();
+        }
+    }
+
+    private static String stripFragment(String url) {
+        int hash = url.indexOf('#');
+        return hash >= 0 ? url.substring(0, hash) : url;
+    }
+
+    private static final class Visit {
+        final HistoryItem item;
+        // URL without the fragment
+        String page;
+        long elapsed;
+
+        Visit(HistoryItem item) {
+            this.item = item;
+        }
+    }
+}
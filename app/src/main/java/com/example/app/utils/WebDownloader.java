@@ -6,7 +6,6 @@ import android.os.Handler;
 import android.os.Looper;
 import android.webkit.URLUtil;
 
-import com.example.app.database.DatabaseHelper;
 import com.example.app.models.DownloadItem;
 
 import java.io.BufferedOutputStream;
@@ -23,10 +22,9 @@ import java.util.concurrent.Executors;
 
 public class WebDownloader {
     private Context context;
-    private DatabaseHelper databaseHelper;
+    private DownloadProgressWriter progressWriter;
     private Map<Long, DownloadTask> activeDownloads;
     private DownloadProgressListener progressListener;
-    private long nextDownloadId = 1;
     private ExecutorService executorService;
     private Handler mainHandler;
 
@@ -37,9 +35,9 @@ public class WebDownloader {
         void onDownloadStarted(DownloadItem item);
     }
 
-    public WebDownloader(Context context, DatabaseHelper databaseHelper) {
+    public WebDownloader(Context context) {
         this.context = context;
-        this.databaseHelper = databaseHelper;
+        this.progressWriter = DownloadProgressWriter.getInstance(context);
         this.activeDownloads = new HashMap<>();
         // Optimize thread pool for better performance
         this.executorService = Executors.newFixedThreadPool(2); // Reduced to 2 to avoid overwhelming the system
@@ -50,7 +48,11 @@ public class WebDownloader {
         this.progressListener = listener;
     }
 
-    public long startDownload(String url, String userAgent, String contentDisposition, String mimeType) {
+    /**
+     * Start downloading once the download has its row, so that its id is
+     * the row id. The listener hears of it then.
+     */
+    public void startDownload(String url, String userAgent, String contentDisposition, String mimeType) {
         String fileName = URLUtil.guessFileName(url, contentDisposition, mimeType);
         
         // Create downloads directory
@@ -79,26 +81,21 @@ public class WebDownloader {
             counter++;
         }
 
-        long downloadId = nextDownloadId++;
         String filePath = file.getAbsolutePath();
         
         DownloadItem downloadItem = new DownloadItem(fileName, url, fileName, filePath, 0, mimeType);
-        downloadItem.setId(downloadId);
         downloadItem.setStatus(DownloadItem.STATUS_DOWNLOADING);
         
-        // Save to database
-        databaseHelper.addDownloadItem(downloadItem);
-        
-        // Start download task
-        DownloadTask task = new DownloadTask(downloadItem, userAgent);
-        activeDownloads.put(downloadId, task);
-        executorService.execute(() -> task.doDownload(url));
-        
-        if (progressListener != null) {
-            progressListener.onDownloadStarted(downloadItem);
-        }
-        
-        return downloadId;
+        // Save to database, then start the download task
+        progressWriter.addDownload(downloadItem, () -> mainHandler.post(() -> {
+            DownloadTask task = new DownloadTask(downloadItem, userAgent);
+            activeDownloads.put(downloadItem.getId(), task);
+            executorService.execute(() -> task.doDownload(url));
+            
+            if (progressListener != null) {
+                progressListener.onDownloadStarted(downloadItem);
+            }
+        }));
     }
 
     public void cancelDownload(long downloadId) {
@@ -107,7 +104,7 @@ public class WebDownloader {
             task.cancel();
             activeDownloads.remove(downloadId);
         }
-        databaseHelper.deleteDownloadItem(downloadId);
+        progressWriter.deleteDownload(downloadId);
     }
     
     public void cancelAllDownloads() {
@@ -187,7 +184,7 @@ public class WebDownloader {
                 }
                 
                 // Update database with file size
-                databaseHelper.updateDownload(downloadItem);
+                progressWriter.updateProgress(downloadItem);
 
                 // Download the file with buffered output
                 input = connection.getInputStream();
@@ -234,9 +231,9 @@ public class WebDownloader {
                             if (progressListener != null && !cancelled) {
                                 progressListener.onDownloadProgress(downloadItem);
                             }
-                            // Use lighter database update for progress
-                            databaseHelper.updateDownloadProgress(downloadItem);
                         });
+                        // Written with the next batch
+                        progressWriter.updateProgress(downloadItem);
                     }
                     
                     output.write(data, 0, count);
@@ -250,7 +247,6 @@ public class WebDownloader {
                     if (progressListener != null && !cancelled) {
                         progressListener.onDownloadProgress(downloadItem);
                     }
-                    databaseHelper.updateDownload(downloadItem);
                 });
                 
                 success = true;
@@ -282,14 +278,14 @@ public class WebDownloader {
                 
                 if (success && !cancelled) {
                     downloadItem.setStatus(DownloadItem.STATUS_COMPLETED);
-                    databaseHelper.updateDownload(downloadItem);
+                    progressWriter.updateStatus(downloadItem);
                     
                     if (progressListener != null) {
                         progressListener.onDownloadCompleted(downloadItem);
                     }
                 } else {
                     downloadItem.setStatus(DownloadItem.STATUS_FAILED);
-                    databaseHelper.updateDownload(downloadItem);
+                    progressWriter.updateStatus(downloadItem);
                     
                     // Delete partial file
                     File file = new File(downloadItem.getFilePath());